@@ -0,0 +1,245 @@
+package com.cb4rr.cordova.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-instance serial command queues drained on the main thread.
+ *
+ * Commands for one instance run strictly in order; instances take turns so a busy one cannot
+ * starve the rest. Each drain runs for at most {@link #SLICE_BUDGET_NANOS} (always at least one
+ * command) and continues on the next frame via {@link Choreographer}, so a burst of calls never
+ * blocks a frame for long.
+ *
+ * Pending commands that a newer one makes pointless are dropped when the newer one is queued and
+ * their callbacks completed with {@link #SUPERSEDED}:
+ * <ul>
+ *   <li>loadUrl drops pending loadUrl, reload, goBack and goForward</li>
+ *   <li>reload drops pending reloads; it is itself completed with {@link #SUPERSEDED} at once when
+ *   a loadUrl is pending, since that load fetches the page anyway. Behind a pending goBack /
+ *   goForward it is kept: those may be served from the back/forward or HTTP cache, and
+ *   "go back, then refresh" must still refresh</li>
+ *   <li>setVisible drops pending setVisible</li>
+ *   <li>create drops everything pending for the id (it replaces the instance anyway)</li>
+ *   <li>destroy drops everything pending except a create, whose caller still gets an instance
+ *   to tear down</li>
+ * </ul>
+ * goBack / goForward are relative and never drop each other.
+ */
+final class CommandScheduler {
+
+    static final String SUPERSEDED = "superseded";
+
+    static final int KIND_OTHER = 0;
+    static final int KIND_NAVIGATION = 1;
+    static final int KIND_HISTORY = 2;
+    static final int KIND_VISIBILITY = 3;
+    static final int KIND_CREATE = 4;
+    static final int KIND_DESTROY = 5;
+    static final int KIND_RELOAD = 6;
+
+    private static final String TAG = "EmbeddedWebView";
+    private static final long SLICE_BUDGET_NANOS = 8_000_000L;
+
+    /** Receives queue depth changes (e.g. to record a trace counter); called with no lock held. */
+    interface DepthListener {
+        void onDepthChanged(int depth);
+    }
+
+    private static final class Command {
+        final String label;
+        final int kind;
+        final CallbackContext callback;
+        final Runnable body;
+
+        Command(String label, int kind, CallbackContext callback, Runnable body) {
+            this.label = label;
+            this.kind = kind;
+            this.callback = callback;
+            this.body = body;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final DepthListener depthListener;
+
+    // Guarded by this
+    private final Map<String, ArrayDeque<Command>> queues = new LinkedHashMap<>();
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private int depth = 0;
+    private int maxDepth = 0;
+    private long executed = 0;
+    private long superseded = 0;
+    private boolean scheduled = false;
+
+    private final Runnable drainTask = this::drain;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> drain();
+
+    CommandScheduler(DepthListener depthListener) {
+        this.depthListener = depthListener;
+    }
+
+    /** Queues {@code body} for instance {@code id}. Safe to call from any thread. */
+    void enqueue(String id, String label, int kind, CallbackContext callback, Runnable body) {
+        Command command = new Command(label, kind, callback, body);
+        List<Command> dropped = null;
+        int newDepth;
+        synchronized (this) {
+            ArrayDeque<Command> queue = queues.get(id);
+            if (queue != null && isAbsorbed(kind, queue)) {
+                // Never queued, so depth and `ready` are unchanged
+                superseded++;
+                dropped = Collections.singletonList(command);
+                queue = null;
+            } else if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(id, queue);
+            }
+            if (queue != null) {
+                // An id stays in `ready` while its queue is non-empty, even if everything is dropped below
+                boolean idle = queue.isEmpty();
+                for (Iterator<Command> it = queue.iterator(); it.hasNext(); ) {
+                    Command pending = it.next();
+                    if (!supersedes(kind, pending.kind)) continue;
+                    it.remove();
+                    if (dropped == null) dropped = new ArrayList<>();
+                    dropped.add(pending);
+                }
+                if (idle) ready.add(id);
+                queue.add(command);
+
+                depth += 1 - (dropped != null ? dropped.size() : 0);
+                maxDepth = Math.max(maxDepth, depth);
+                if (dropped != null) superseded += dropped.size();
+                if (!scheduled) {
+                    scheduled = true;
+                    // First slice runs as soon as the main thread is free; later ones wait for a frame
+                    handler.post(drainTask);
+                }
+            }
+            newDepth = depth;
+        }
+        completeSuperseded(dropped);
+        if (depthListener != null) depthListener.onDepthChanged(newDepth);
+    }
+
+    private static boolean supersedes(int newer, int pending) {
+        switch (newer) {
+            case KIND_CREATE:
+                return true;
+            case KIND_DESTROY:
+                return pending != KIND_CREATE;
+            case KIND_NAVIGATION:
+                return pending == KIND_NAVIGATION || pending == KIND_HISTORY || pending == KIND_RELOAD;
+            case KIND_RELOAD:
+                return pending == KIND_RELOAD;
+            case KIND_VISIBILITY:
+                return pending == KIND_VISIBILITY;
+            default:
+                return false;
+        }
+    }
+
+    /** True when a pending command makes a new one of {@code kind} pointless before it is queued. */
+    private static boolean isAbsorbed(int kind, ArrayDeque<Command> queue) {
+        if (kind != KIND_RELOAD) return false;
+        for (Command pending : queue) {
+            if (pending.kind == KIND_NAVIGATION) return true;
+        }
+        return false;
+    }
+
+    /** Drops every pending command (callbacks get {@link #SUPERSEDED}); used on plugin teardown. */
+    void cancelAll() {
+        List<Command> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Command> queue : queues.values()) dropped.addAll(queue);
+            queues.clear();
+            ready.clear();
+            superseded += dropped.size();
+            depth = 0;
+        }
+        completeSuperseded(dropped);
+        if (depthListener != null) depthListener.onDepthChanged(0);
+    }
+
+    // Main thread
+    private void drain() {
+        long deadline = System.nanoTime() + SLICE_BUDGET_NANOS;
+        while (true) {
+            Command command;
+            int newDepth;
+            synchronized (this) {
+                String id = ready.poll();
+                if (id == null) {
+                    scheduled = false;
+                    return;
+                }
+                ArrayDeque<Command> queue = queues.get(id);
+                command = queue != null ? queue.poll() : null;
+                if (command == null) {
+                    queues.remove(id);
+                    continue;
+                }
+                if (queue.isEmpty()) queues.remove(id);
+                else ready.add(id);
+                depth--;
+                executed++;
+                newDepth = depth;
+            }
+            if (depthListener != null) depthListener.onDepthChanged(newDepth);
+
+            try {
+                command.body.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Command " + command.label + " failed", e);
+                if (command.callback != null) command.callback.error(e.getMessage());
+            }
+
+            if (System.nanoTime() >= deadline) break;
+        }
+        synchronized (this) {
+            if (ready.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+        }
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private static void completeSuperseded(List<Command> dropped) {
+        if (dropped == null) return;
+        for (Command c : dropped) {
+            if (c.callback != null) c.callback.success(SUPERSEDED);
+        }
+    }
+
+    /** Queue depth and counters, for getMetrics. */
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject perInstance = new JSONObject();
+        for (Map.Entry<String, ArrayDeque<Command>> entry : queues.entrySet()) {
+            perInstance.put(entry.getKey(), entry.getValue().size());
+        }
+        JSONObject json = new JSONObject();
+        json.put("depth", depth);
+        json.put("maxDepth", maxDepth);
+        json.put("executed", executed);
+        json.put("superseded", superseded);
+        json.put("instances", perInstance);
+        return json;
+    }
+}
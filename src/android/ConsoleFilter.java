@@ -0,0 +1,162 @@
+package com.cb4rr.cordova.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Per-instance filter and rate limiter for forwarding page console output ({@code options.console}).
+ *
+ * <pre>
+ * console: {
+ *   level: 'warning',        // minimum level: 'debug' | 'log' | 'warning' | 'error'
+ *   include: ['TypeError'],  // forward only messages containing one of these (case-insensitive)
+ *   exclude: ['favicon'],    // never forward messages containing one of these
+ *   ratePerSecond: 20,       // token-bucket refill rate
+ *   burst: 50                // token-bucket size
+ * }
+ * </pre>
+ *
+ * Patterns are plain substrings, like blockedUrls, compiled once into upper/lower-case char arrays
+ * so matching a message never allocates. Not thread-safe; used on the UI thread only.
+ */
+final class ConsoleFilter {
+
+    static final int LEVEL_DEBUG = 0;
+    static final int LEVEL_LOG = 1;
+    static final int LEVEL_WARNING = 2;
+    static final int LEVEL_ERROR = 3;
+
+    /** A case-insensitive substring, pre-folded once. */
+    static final class Needle {
+        private final char[] lower;
+        private final char[] upper;
+
+        Needle(String pattern) {
+            int n = pattern.length();
+            lower = new char[n];
+            upper = new char[n];
+            for (int i = 0; i < n; i++) {
+                char c = pattern.charAt(i);
+                lower[i] = Character.toLowerCase(c);
+                upper[i] = Character.toUpperCase(c);
+            }
+        }
+
+        boolean foundIn(String text) {
+            int n = lower.length;
+            if (n == 0) return true;
+            int last = text.length() - n;
+            char first0 = lower[0], first1 = upper[0];
+            for (int i = 0; i <= last; i++) {
+                char c = text.charAt(i);
+                if (c != first0 && c != first1) continue;
+                int j = 1;
+                while (j < n) {
+                    char t = text.charAt(i + j);
+                    if (t != lower[j] && t != upper[j]) break;
+                    j++;
+                }
+                if (j == n) return true;
+            }
+            return false;
+        }
+    }
+
+    final int minLevel;
+    private final Needle[] include;
+    private final Needle[] exclude;
+
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /** Messages refused by the rate limit since the last {@link #takeDropped()}, and overall. */
+    private int dropped = 0;
+    private long totalDropped = 0;
+
+    private ConsoleFilter(int minLevel, Needle[] include, Needle[] exclude, double ratePerSecond, double burst) {
+        this.minLevel = minLevel;
+        this.include = include;
+        this.exclude = exclude;
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /** Parses {@code options.console}; null when absent or disabled. {@code console: true} uses the defaults. */
+    static ConsoleFilter fromOptions(JSONObject options) {
+        if (options == null || !options.has("console")) return null;
+        JSONObject console = options.optJSONObject("console");
+        if (console == null) {
+            return options.optBoolean("console", false)
+                    ? new ConsoleFilter(LEVEL_WARNING, new Needle[0], new Needle[0], 20, 50) : null;
+        }
+        double rate = Math.max(0.1, console.optDouble("ratePerSecond", 20));
+        double burst = Math.max(1, console.optDouble("burst", 50));
+        return new ConsoleFilter(parseLevel(console.optString("level", "warning")),
+                compile(console.optJSONArray("include")), compile(console.optJSONArray("exclude")), rate, burst);
+    }
+
+    static int parseLevel(String name) {
+        if ("debug".equalsIgnoreCase(name)) return LEVEL_DEBUG;
+        if ("log".equalsIgnoreCase(name) || "info".equalsIgnoreCase(name) || "tip".equalsIgnoreCase(name)) return LEVEL_LOG;
+        if ("error".equalsIgnoreCase(name)) return LEVEL_ERROR;
+        return LEVEL_WARNING;
+    }
+
+    private static Needle[] compile(JSONArray patterns) {
+        if (patterns == null) return new Needle[0];
+        int count = 0;
+        Needle[] needles = new Needle[patterns.length()];
+        for (int i = 0; i < patterns.length(); i++) {
+            String p = patterns.optString(i, "");
+            if (!p.isEmpty()) needles[count++] = new Needle(p);
+        }
+        if (count == needles.length) return needles;
+        Needle[] trimmed = new Needle[count];
+        System.arraycopy(needles, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /** Level and pattern check; does not consume rate-limit tokens. */
+    boolean matches(int level, String message) {
+        if (level < minLevel || message == null) return false;
+        for (Needle n : exclude) {
+            if (n.foundIn(message)) return false;
+        }
+        if (include.length == 0) return true;
+        for (Needle n : include) {
+            if (n.foundIn(message)) return true;
+        }
+        return false;
+    }
+
+    /** Takes one token, or counts the message as dropped when the bucket is empty. */
+    boolean tryAcquire(long nowNanos) {
+        long elapsed = nowNanos - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * ratePerNano);
+            lastRefill = nowNanos;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        dropped++;
+        totalDropped++;
+        return false;
+    }
+
+    /** Returns and resets the dropped count since the last call. */
+    int takeDropped() {
+        int n = dropped;
+        dropped = 0;
+        return n;
+    }
+
+    long totalDropped() {
+        return totalDropped;
+    }
+}
@@ -7,47 +7,89 @@ import org.apache.cordova.CordovaWebView;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.webkit.WebSettings;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceRequest; 
+import android.webkit.WebResourceResponse;
+import android.webkit.WebResourceError;
 import android.webkit.CookieManager;
 import android.webkit.ConsoleMessage; 
+import android.webkit.URLUtil;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.util.Base64;
 import android.util.Log;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList; 
 import java.util.List; 
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.io.File;
 import android.graphics.Bitmap;
 import android.view.Gravity;
 import android.os.Handler; 
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Bundle;
 
 import java.net.URL;
 import java.net.MalformedURLException;
+import android.content.Context;
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.net.Uri;
 import android.Manifest;
 import android.content.pm.PackageManager;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
 
 public class EmbeddedWebView extends CordovaPlugin {
 
     private static final String TAG = "EmbeddedWebView";
     private static final int PERMISSION_REQUEST_CODE_AUDIO = 100;
 
+    private static final int SCRIPT_ALL_DEFAULT_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_SCRIPTS = 8;
+
+    // Adaptive loading profiles, derived from the default network's capabilities
+    private static final String NETWORK_UNMETERED = "unmetered";
+    private static final String NETWORK_METERED = "metered";
+    private static final String NETWORK_SLOW = "slow";
+    private static final String NETWORK_OFFLINE = "offline";
+    private static final int DEFAULT_SLOW_NETWORK_KBPS = 1500;
+
+    // Page -> host messages arriving within this window are delivered as one `message` event.
+    private static final int MESSAGE_BATCH_WINDOW_MS = 16;
+    private static final int MESSAGE_BATCH_MAX = 256;
+
+    // Forwarded console output is delivered as one `consoleMessage` event per window.
+    private static final int CONSOLE_BATCH_WINDOW_MS = 250;
+    private static final int CONSOLE_BATCH_MAX = 100;
+    private static final String[] CONSOLE_LEVEL_NAMES = {"debug", "log", "warning", "error"};
+
+    // Layout-loop noise that is never logged or forwarded
+    private static final ConsoleFilter.Needle RESIZE_OBSERVER = new ConsoleFilter.Needle("ResizeObserver");
+
     private android.webkit.PermissionRequest pendingPermissionRequest;
     private String[] pendingPermissionResources;
 
@@ -60,6 +102,60 @@ public class EmbeddedWebView extends CordovaPlugin {
         List<String> blockedUrls;
         List<String> historySkipUrls;
         String lastReportedUrl;
+        RequestHeaderPolicy requestHeaders;
+        WebMessagePortCompat messagePort;
+        JSONArray pendingMessages = new JSONArray();
+        boolean messageFlushScheduled = false;
+        RetryPolicy retryPolicy;
+        String retryUrl;
+        int retryAttempt = 0;
+        long retryStartedAt;
+        JSONArray retryTimings;
+        Runnable pendingRetry;
+        // Extra headers of the last loadUrl(url, headers), so a retry of that URL sends them again
+        String headersUrl;
+        Map<String, String> loadHeaders;
+        boolean retryCacheOnly = false;
+        int cacheModeBeforeRetry = Integer.MIN_VALUE;
+        boolean mainFrameFailed = false;
+        int baseCacheMode = WebSettings.LOAD_DEFAULT;
+        boolean allowExternalApp = false;
+        boolean preserveMedia = false;
+        boolean hidden = false;
+        JSONObject options;
+        boolean persistSession = false;
+        int pendingScrollX = -1;
+        int pendingScrollY = -1;
+        File downloadDir;
+        ConsoleFilter consoleFilter;
+        JSONArray pendingConsole = new JSONArray();
+        boolean consoleFlushScheduled = false;
+        // executeScript limits (options.scripts); scripts holds queued and running calls by token
+        int maxInFlightScripts = DEFAULT_MAX_IN_FLIGHT_SCRIPTS;
+        boolean rejectScriptsOverLimit = false;
+        int defaultScriptTimeoutMs = 0;
+        boolean reportUnresponsive = false;
+        int scriptsInFlight = 0;
+        Map<String, PendingScript> scripts = new HashMap<>();
+        ArrayDeque<PendingScript> scriptQueue = new ArrayDeque<>();
+    }
+
+    // One executeScript call, from submission until it answers, times out or is cancelled.
+    private static class PendingScript {
+        final String token;
+        final String script;
+        final CallbackContext callbackContext;
+        final int timeoutMs;
+        boolean started = false;
+        boolean done = false;
+        Runnable timeout;
+
+        PendingScript(String token, String script, CallbackContext callbackContext, int timeoutMs) {
+            this.token = token;
+            this.script = script;
+            this.callbackContext = callbackContext;
+            this.timeoutMs = timeoutMs;
+        }
     }
 
     // JS bridge used to report SPA client-side URL changes (Navigation API / history) back to native.
@@ -73,6 +169,184 @@ public class EmbeddedWebView extends CordovaPlugin {
         }
     }
 
+    // JS bridge for EWV.postMessage: fallback transport when WebMessagePort is unavailable,
+    // and the page's request for a fresh port once its listener is installed.
+    private class MessageBridge {
+        private final String id;
+        MessageBridge(String id) { this.id = id; }
+
+        @android.webkit.JavascriptInterface
+        public void postMessage(final String json) {
+            cordova.getActivity().runOnUiThread(() -> queueMessage(id, json, null));
+        }
+
+        @android.webkit.JavascriptInterface
+        public void postBinary(final String base64) {
+            cordova.getActivity().runOnUiThread(() -> queueMessage(id, null, base64));
+        }
+
+        @android.webkit.JavascriptInterface
+        public void requestPort() {
+            cordova.getActivity().runOnUiThread(() -> openMessageChannel(id));
+        }
+    }
+
+    // Injected at page start/finish. Installs window.EWV (postMessage / addEventListener('message')).
+    private static final String MESSAGE_SCRIPT =
+        "(function(){" +
+        "  if (window.__ewvMessageInstalled) return;" +
+        "  window.__ewvMessageInstalled = true;" +
+        "  var bridge = window.EWVMessageBridge;" +
+        "  var listeners = [];" +
+        "  var port = null, portBinary = false;" +
+        "  var toB64 = function(buf){ var s = '', b = new Uint8Array(buf); for (var i = 0; i < b.length; i++) s += String.fromCharCode(b[i]); return btoa(s); };" +
+        "  var fromB64 = function(str){ var s = atob(str), b = new Uint8Array(s.length); for (var i = 0; i < s.length; i++) b[i] = s.charCodeAt(i); return b.buffer; };" +
+        "  var api = window.EWV = window.EWV || {};" +
+        "  var deliver = function(data){" +
+        "    var evt = { data: data };" +
+        "    if (typeof api.onmessage === 'function') { try { api.onmessage(evt); } catch(e){} }" +
+        "    for (var i = 0; i < listeners.length; i++) { try { listeners[i](evt); } catch(e){} }" +
+        "  };" +
+        "  api.postMessage = function(data){" +
+        "    if (ArrayBuffer.isView(data)) data = data.buffer.slice(data.byteOffset, data.byteOffset + data.byteLength);" +
+        "    if (data instanceof ArrayBuffer) {" +
+        "      if (port && portBinary) port.postMessage(data);" +
+        "      else if (bridge) bridge.postBinary(toB64(data));" +
+        "      return;" +
+        "    }" +
+        "    var json = JSON.stringify(data === undefined ? null : data);" +
+        "    if (port) port.postMessage(json); else if (bridge) bridge.postMessage(json);" +
+        "  };" +
+        "  api.addEventListener = function(type, fn){ if (type === 'message' && typeof fn === 'function') listeners.push(fn); };" +
+        "  api.removeEventListener = function(type, fn){ var i = listeners.indexOf(fn); if (i >= 0) listeners.splice(i, 1); };" +
+        "  api.__receive = function(json){ deliver(JSON.parse(json)); };" +
+        "  api.__receiveBinary = function(b64){ deliver(fromB64(b64)); };" +
+        "  window.addEventListener('message', function(e){" +
+        "    if (e.data !== '__ewv_port__' && e.data !== '__ewv_port_binary__') return;" +
+        // Only native postWebMessage has no source window; frames could otherwise hijack the channel.
+        // Native closes its end whenever it opens a new channel (any requestPort call, from any
+        // frame), so a later native handshake replaces the port rather than being ignored.
+        "    if (e.source !== null || !e.ports || !e.ports[0]) return;" +
+        "    e.stopImmediatePropagation();" +
+        "    if (port) { port.onmessage = null; try { port.close(); } catch(err){} }" +
+        "    port = e.ports[0];" +
+        "    portBinary = e.data === '__ewv_port_binary__';" +
+        "    port.onmessage = function(m){ deliver(typeof m.data === 'string' ? JSON.parse(m.data) : m.data); };" +
+        "  });" +
+        "  try { if (bridge) bridge.requestPort(); } catch(e){}" +
+        "})();";
+
+    // Injected at page start/finish. Routes target=_blank links and window.open(url) straight into
+    // this instance. Multiple windows are not enabled, so WebView never calls onCreateWindow; what
+    // this misses (form targets, window.open() without a URL) gets WebView's single-window default.
+    private static final String POPUP_SCRIPT =
+        "(function(){" +
+        "  if (window.__ewvPopupHookInstalled) return;" +
+        "  window.__ewvPopupHookInstalled = true;" +
+        // A named target is only a new window when no frame (here or in a same-origin top) has that name
+        "  var hasFrame = function(t){" +
+        "    if (window.name === t) return true;" +
+        "    try { if (window.frames[t]) return true; } catch(e){}" +
+        "    try { var els = document.getElementsByName(t); for (var i = 0; i < els.length; i++) { if (/^i?frame$/i.test(els[i].tagName)) return true; } } catch(e){}" +
+        "    try { if (window.top !== window && (window.top.name === t || window.top.frames[t])) return true; } catch(e){}" +
+        "    return false;" +
+        "  };" +
+        "  var isNewWindow = function(t){" +
+        "    if (!t || t === '_self' || t === '_parent' || t === '_top') return false;" +
+        "    return t === '_blank' || !hasFrame(t);" +
+        "  };" +
+        // A rerouted open answers with a stand-in window rather than null, which pages read as
+        // "popup blocked"; it cannot be scripted, since the page it stands for replaces this one.
+        "  var stubWindow = function(){" +
+        "    var noop = function(){};" +
+        "    return { closed: false, opener: window, close: noop, focus: noop, blur: noop, postMessage: noop };" +
+        "  };" +
+        "  var nativeOpen = window.open;" +
+        "  window.open = function(url, target){" +
+        "    if (url && isNewWindow(target === undefined ? '_blank' : String(target))) {" +
+        "      try { location.assign(new URL(url, location.href).href); return stubWindow(); } catch(e){}" +
+        "    }" +
+        "    return nativeOpen.apply(window, arguments);" +
+        "  };" +
+        "  document.addEventListener('click', function(e){" +
+        "    if (e.defaultPrevented || !e.target || !e.target.closest) return;" +
+        "    var a = e.target.closest('a[target]');" +
+        "    if (!a || !isNewWindow(a.target) || a.hasAttribute('download') || !/^https?:/i.test(a.href)) return;" +
+        "    e.preventDefault();" +
+        "    location.assign(a.href);" +
+        "  }, false);" +
+        "})();";
+
+    // mediaSuspend: 'preserve' - pause media through page APIs (no iframe reload) and record positions.
+    // Returns JSON state. Only YouTube iframes without enablejsapi=1 cannot be paused in place and
+    // are still reloaded.
+    private static final String MEDIA_SUSPEND_SCRIPT =
+        "(function(){" +
+        "  var state = { media: [], pausedFrames: 0, reloadedFrames: 0 };" +
+        "  try {" +
+        "    var els = document.querySelectorAll('video, audio');" +
+        "    for (var i = 0; i < els.length; i++) {" +
+        "      var m = els[i], playing = !m.paused && !m.ended;" +
+        "      if (playing) { m.setAttribute('data-ewv-resume', '1'); m.pause(); }" +
+        "      m.__ewvTime = m.currentTime;" +
+        "      state.media.push({ kind: m.tagName.toLowerCase(), src: m.currentSrc || '', currentTime: m.currentTime, wasPlaying: playing });" +
+        "    }" +
+        "    var frames = document.querySelectorAll('iframe');" +
+        "    for (var j = 0; j < frames.length; j++) {" +
+        "      var f = frames[j], src = f.src || '', cmd = null;" +
+        "      if (/youtube(-nocookie)?\\.com\\/embed/.test(src)) {" +
+        "        if (!/[?&]enablejsapi=1/.test(src)) { f.parentNode.replaceChild(f.cloneNode(true), f); state.reloadedFrames++; continue; }" +
+        "        cmd = JSON.stringify({ event: 'command', func: 'pauseVideo', args: [] });" +
+        "      } else if (/player\\.vimeo\\.com/.test(src)) {" +
+        "        cmd = JSON.stringify({ method: 'pause' });" +
+        "      }" +
+        "      if (cmd && f.contentWindow) { f.contentWindow.postMessage(cmd, '*'); state.pausedFrames++; }" +
+        "    }" +
+        "  } catch(e) {}" +
+        "  return JSON.stringify(state);" +
+        "})();";
+
+    // Resumes only the media that was playing, at its recorded position. Embedded players stay
+    // paused where they were (their playing state is not observable cross-origin).
+    private static final String MEDIA_RESUME_SCRIPT =
+        "(function(){" +
+        "  var state = { media: [] };" +
+        "  try {" +
+        "    var els = document.querySelectorAll('video[data-ewv-resume], audio[data-ewv-resume]');" +
+        "    for (var i = 0; i < els.length; i++) {" +
+        "      var m = els[i];" +
+        "      m.removeAttribute('data-ewv-resume');" +
+        "      if (typeof m.__ewvTime === 'number' && Math.abs(m.currentTime - m.__ewvTime) > 0.5) m.currentTime = m.__ewvTime;" +
+        "      var p = m.play(); if (p && p.catch) p.catch(function(){});" +
+        "      state.media.push({ kind: m.tagName.toLowerCase(), src: m.currentSrc || '', currentTime: m.currentTime });" +
+        "    }" +
+        "  } catch(e) {}" +
+        "  return JSON.stringify(state);" +
+        "})();";
+
+    // Adaptive loading: stop speculative prefetch/prerender on poor links, and put it back afterwards.
+    private static final String PREFETCH_PAUSE_SCRIPT =
+        "(function(){" +
+        "  try {" +
+        "    var links = document.querySelectorAll('link[rel=\"prefetch\"],link[rel=\"prerender\"]');" +
+        "    for (var i = 0; i < links.length; i++) { links[i].setAttribute('data-ewv-rel', links[i].rel); links[i].rel = 'ewv-paused'; }" +
+        "    var paused = window.__ewvPausedRules = window.__ewvPausedRules || [];" +
+        "    var rules = document.querySelectorAll('script[type=\"speculationrules\"]');" +
+        "    for (var j = 0; j < rules.length; j++) { paused.push({ el: rules[j], parent: rules[j].parentNode }); rules[j].parentNode.removeChild(rules[j]); }" +
+        "  } catch(e) {}" +
+        "})();";
+
+    private static final String PREFETCH_RESUME_SCRIPT =
+        "(function(){" +
+        "  try {" +
+        "    var links = document.querySelectorAll('link[data-ewv-rel]');" +
+        "    for (var i = 0; i < links.length; i++) { links[i].rel = links[i].getAttribute('data-ewv-rel'); links[i].removeAttribute('data-ewv-rel'); }" +
+        "    var paused = window.__ewvPausedRules || [];" +
+        "    for (var j = 0; j < paused.length; j++) { (paused[j].parent || document.head).appendChild(paused[j].el); }" +
+        "    window.__ewvPausedRules = [];" +
+        "  } catch(e) {}" +
+        "})();";
+
     // Injected at page start/finish. Hooks history + Navigation API and reports the full URL.
     private static final String URL_TRACK_SCRIPT =
         "(function(){" +
@@ -119,8 +393,45 @@ public class EmbeddedWebView extends CordovaPlugin {
     private final Map<String, WebViewInstance> instances = new HashMap<>();
     private String lastCreatedId = null;
 
+    // Native trace ring buffer; also gates the string-concatenated debug logging.
+    private final TraceBuffer trace = new TraceBuffer();
+
+    // Shared by all instances so requests reuse the same keep-alive connections.
+    private static final NativeFetcher fetcher = new NativeFetcher();
+
     private CordovaWebView cordovaWebView;
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Per-instance command queues; depth is exported as a trace counter and through getMetrics.
+    private final CommandScheduler commands = new CommandScheduler(
+            depth -> trace.counter("scheduler", "commandQueueDepth", depth));
+
+    // Adaptive loading state (UI thread). networkProfile is null while adaptive loading is off.
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private String networkProfile = null;
+    private int slowNetworkKbps = DEFAULT_SLOW_NETWORK_KBPS;
+
+    // True while WebView timers (process-wide) are paused because the app is in the background
+    // and every instance is suspended.
+    private boolean timersPaused = false;
+
+    // Persisted sessions (options.persistSession). Sessions found by restoreSessions wait in
+    // pendingSessions until their id is first used; all disk I/O runs on sessionIo.
+    private final Map<String, SessionStore.Record> pendingSessions = new HashMap<>();
+    private final ExecutorService sessionIo = Executors.newSingleThreadExecutor();
+    private SessionStore sessionStore;
+    // Options holding credentials; stripped before a session is saved
+    private static final String[] UNPERSISTED_OPTIONS = { "cookies", "headers", "requestHeaders" };
+
+    // Native downloads (options.downloads), shared by all instances so the concurrency limit is
+    // global. activeDownloads maps a download id to its instance id; touched from worker threads.
+    private StreamingDownloader downloader;
+    private final Map<String, String> activeDownloads = new ConcurrentHashMap<>();
+    private int downloadCounter = 0;
+
+    private int scriptCounter = 0;
+
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         super.initialize(cordova, webView);
@@ -154,12 +465,12 @@ public class EmbeddedWebView extends CordovaPlugin {
         }
 
         if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            Log.d(TAG, "RECORD_AUDIO permission granted by user");
+            if (trace.isEnabled()) Log.d(TAG, "RECORD_AUDIO permission granted by user");
             pendingPermissionRequest.grant(pendingPermissionResources != null
                     ? pendingPermissionResources
                     : new String[]{android.webkit.PermissionRequest.RESOURCE_AUDIO_CAPTURE});
         } else {
-            Log.d(TAG, "RECORD_AUDIO permission denied by user");
+            if (trace.isEnabled()) Log.d(TAG, "RECORD_AUDIO permission denied by user");
             pendingPermissionRequest.deny();
         }
 
@@ -170,6 +481,16 @@ public class EmbeddedWebView extends CordovaPlugin {
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext)
             throws JSONException {
+        final long traceStart = trace.begin();
+        try {
+            return executeAction(action, args, callbackContext);
+        } finally {
+            trace.end("execute", action, traceStart, null);
+        }
+    }
+
+    private boolean executeAction(String action, JSONArray args, CallbackContext callbackContext)
+            throws JSONException {
         if ("create".equals(action)) {
             String id = args.getString(0);
             String url = args.getString(1);
@@ -192,7 +513,20 @@ public class EmbeddedWebView extends CordovaPlugin {
         if ("executeScript".equals(action)) {
             String id = args.getString(0);
             String script = args.getString(1);
-            this.executeScript(id, script, callbackContext);
+            JSONObject options = args.optJSONObject(2);
+            this.executeScript(id, script, options, callbackContext);
+            return true;
+        }
+        if ("cancelScript".equals(action)) {
+            String id = args.getString(0);
+            String token = args.getString(1);
+            this.cancelScript(id, token, callbackContext);
+            return true;
+        }
+        if ("executeScriptAll".equals(action)) {
+            String script = args.getString(0);
+            JSONObject options = args.optJSONObject(1);
+            this.executeScriptAll(script, options, callbackContext);
             return true;
         }
         if ("setVisible".equals(action)) {
@@ -226,11 +560,78 @@ public class EmbeddedWebView extends CordovaPlugin {
             this.clearHistory(id, callbackContext);
             return true;
         }
+        if ("postMessage".equals(action)) {
+            String id = args.getString(0);
+            String data = args.getString(1);
+            boolean binary = args.optBoolean(2, false);
+            this.postMessage(id, data, binary, callbackContext);
+            return true;
+        }
+        if ("setAdaptiveLoading".equals(action)) {
+            boolean enabled = args.getBoolean(0);
+            JSONObject options = args.optJSONObject(1);
+            this.setAdaptiveLoading(enabled, options, callbackContext);
+            return true;
+        }
+        if ("restoreSessions".equals(action)) {
+            JSONObject credentials = args.optJSONObject(0);
+            this.restoreSessions(credentials, callbackContext);
+            return true;
+        }
+        if ("cancelDownload".equals(action)) {
+            String downloadId = args.getString(0);
+            this.cancelDownload(downloadId, callbackContext);
+            return true;
+        }
+        if ("setTracing".equals(action)) {
+            boolean enabled = args.getBoolean(0);
+            int capacity = args.optInt(1, 0);
+            this.setTracing(enabled, capacity, callbackContext);
+            return true;
+        }
+        if ("getMetrics".equals(action)) {
+            JSONObject metrics = new JSONObject();
+            metrics.put("commandQueue", commands.toJson());
+            callbackContext.success(metrics);
+            return true;
+        }
+        if ("dumpTrace".equals(action)) {
+            boolean clear = args.optBoolean(0, false);
+            this.dumpTrace(clear, callbackContext);
+            return true;
+        }
         return false;
     }
 
+    // Posts an action body to the UI thread, recording queue delay and run time when tracing is on.
+    private void runOnUi(final String label, final String id, final Runnable task) {
+        cordova.getActivity().runOnUiThread(traced(label, id, task));
+    }
+
+    // Queues a per-instance action on that instance's serial command queue; see CommandScheduler
+    // for ordering and which pending commands a new one supersedes.
+    private void runQueued(final String label, final String id, int kind,
+            final CallbackContext callbackContext, final Runnable task) {
+        commands.enqueue(id, label, kind, callbackContext, traced(label, id, task));
+    }
+
+    private Runnable traced(final String label, final String id, final Runnable task) {
+        if (!trace.isEnabled()) return task;
+        final long queuedAt = trace.begin();
+        return () -> {
+            trace.end("uiQueue", label, queuedAt, id);
+            long runStart = trace.begin();
+            try {
+                task.run();
+            } finally {
+                trace.end("ui", label, runStart, id);
+            }
+        };
+    }
+
     private WebViewInstance getInstance(String id, CallbackContext callbackContext) {
         WebViewInstance instance = instances.get(id);
+        if (instance == null && pendingSessions.containsKey(id)) instance = restoreSession(id);
         if (instance == null || instance.webView == null) {
             if (callbackContext != null) {
                 callbackContext.error("WebView instance not found for id: " + id);
@@ -258,365 +659,604 @@ public class EmbeddedWebView extends CordovaPlugin {
         final JSONObject options,
         final CallbackContext callbackContext
 ) {
-    Log.d(TAG, "Creating WebView (id=" + id + ")");
-
-    if (instances.containsKey(id)) {
-        destroy(id, null);
-    }
+    if (trace.isEnabled()) Log.d(TAG, "Creating WebView (id=" + id + ")");
 
-    cordova.getActivity().runOnUiThread(() -> {
+    runQueued("create", id, CommandScheduler.KIND_CREATE, callbackContext, () -> {
         try {
-            // 1. Convert CSS px → Android px
-            float density = cordova.getActivity()
-                    .getResources()
-                    .getDisplayMetrics()
-                    .density;
-
-            int topOffsetPx = (int) (options.optInt("top", 0) * density);
-            int bottomOffsetPx = (int) (options.optInt("bottom", 0) * density);
-
-            Log.d(TAG, "Offsets -> topPx=" + topOffsetPx + " bottomPx=" + bottomOffsetPx);
-
-            // Parse blockedUrls from options so navigation checks can reference it
-            final List<String> blockedUrls = new ArrayList<>();
-            if (options.has("blockedUrls")) {
-                JSONArray blockedArr = options.getJSONArray("blockedUrls");
-                for (int i = 0; i < blockedArr.length(); i++) {
-                    blockedUrls.add(blockedArr.getString(i));
-                }
+            if (instances.containsKey(id)) destroyNow(id, null, true);
+            // A fresh create replaces any session saved under this id, restored or not
+            pendingSessions.remove(id);
+            deleteSession(id);
+            callbackContext.success(buildInstance(id, url, options, null));
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating WebView", e);
+            callbackContext.error(e.getMessage());
+        }
+    });
+}
+
+    // UI thread. Builds, attaches and loads an instance. `restore` is a persisted session to
+    // rebuild from (null for a plain create).
+    private String buildInstance(final String id, final String url, final JSONObject options,
+            final SessionStore.Record restore) throws JSONException {
+        // 1. Convert CSS px → Android px
+        float density = cordova.getActivity()
+                .getResources()
+                .getDisplayMetrics()
+                .density;
+
+        int topOffsetPx = (int) (options.optInt("top", 0) * density);
+        int bottomOffsetPx = (int) (options.optInt("bottom", 0) * density);
+
+        if (trace.isEnabled()) Log.d(TAG, "Offsets -> topPx=" + topOffsetPx + " bottomPx=" + bottomOffsetPx);
+
+        // Parse blockedUrls from options so navigation checks can reference it
+        final List<String> blockedUrls = new ArrayList<>();
+        if (options.has("blockedUrls")) {
+            JSONArray blockedArr = options.getJSONArray("blockedUrls");
+            for (int i = 0; i < blockedArr.length(); i++) {
+                blockedUrls.add(blockedArr.getString(i));
             }
+        }
 
-            // Parse historySkipUrls if provided (used by navigation helpers)
-            final List<String> historySkipUrls = new ArrayList<>();
-            if (options.has("historySkipUrls")) {
-                JSONArray skipArr = options.getJSONArray("historySkipUrls");
-                for (int i = 0; i < skipArr.length(); i++) {
-                    historySkipUrls.add(skipArr.getString(i));
-                }
+        // Parse historySkipUrls if provided (used by navigation helpers)
+        final List<String> historySkipUrls = new ArrayList<>();
+        if (options.has("historySkipUrls")) {
+            JSONArray skipArr = options.getJSONArray("historySkipUrls");
+            for (int i = 0; i < skipArr.length(); i++) {
+                historySkipUrls.add(skipArr.getString(i));
             }
+        }
 
-            // 2. Get root view (same parent as Cordova WebView)
-            View cordovaView = cordovaWebView.getView();
-            ViewGroup rootGroup = (ViewGroup) cordovaView.getParent();
-
-            // 3. Create container
-            FrameLayout container = new FrameLayout(cordova.getActivity());
-            container.setBackgroundColor(Color.TRANSPARENT);
-
-            // 4. Create WebView
-            WebView webView = new WebView(cordova.getActivity());
-            WebSettings settings = webView.getSettings();
-
-            settings.setJavaScriptEnabled(true);
-            settings.setDomStorageEnabled(true);
-            settings.setDatabaseEnabled(true);
-            settings.setAllowFileAccess(true);
-            settings.setAllowContentAccess(true);
-            settings.setLoadWithOverviewMode(true);
-            settings.setUseWideViewPort(true);
-            settings.setJavaScriptCanOpenWindowsAutomatically(true);
-
-            // Bridge for SPA client-side URL change reporting
-            webView.addJavascriptInterface(new UrlBridge(id), "EWVUrlBridge");
-
-            // --- PROGRESS BAR (bottom) ---
-            ProgressBar progressBar = new ProgressBar(cordova.getActivity(), null, android.R.attr.progressBarStyleHorizontal);
-            String progressColor = options.has("progressColor") ? options.optString("progressColor") : "#007AFF";
-            try { progressBar.getProgressDrawable().setColorFilter(Color.parseColor(progressColor), PorterDuff.Mode.SRC_IN); } catch (Exception ignored) {}
-            int progressHeightDp = 10;
-            int progressHeightPx = (int) (progressHeightDp * density);
-            FrameLayout.LayoutParams progressParams = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, progressHeightPx, Gravity.BOTTOM);
-            progressBar.setMax(100);
-            progressBar.setVisibility(View.GONE);
-
-            // Respect option to allow external app launches (default: false)
-            final boolean allowExternalApp = options.optBoolean("allowExternalApp", false);
-
-            // SINGLE WEBVIEW CLIENT: navigation lifecycle, blocked handling and external scheme interception
-            webView.setWebViewClient(new WebViewClient() {
-
-                private boolean checkBlocked(String url) {
-                    boolean blocked = isUrlBlocked(url, blockedUrls);
-                    if (blocked) {
-                        Log.d(TAG, "Blocked navigation: " + url);
-                        fireEvent(id, "loadBlocked", url);
-                        return true;
-                    }
-                    return false;
-                }
+        // Default headers applied to matching requests (see shouldInterceptRequest)
+        final RequestHeaderPolicy requestHeaders = RequestHeaderPolicy.fromOptions(options);
+
+        // Native retry of transient main-frame failures (null = disabled)
+        final RetryPolicy retryPolicy = RetryPolicy.fromOptions(options);
+
+        // Console forwarding to the host (null = disabled)
+        final ConsoleFilter consoleFilter = ConsoleFilter.fromOptions(options);
+
+        // 2. Get root view (same parent as Cordova WebView)
+        View cordovaView = cordovaWebView.getView();
+        ViewGroup rootGroup = (ViewGroup) cordovaView.getParent();
+
+        // 3. Create container
+        FrameLayout container = new FrameLayout(cordova.getActivity());
+        container.setBackgroundColor(Color.TRANSPARENT);
+
+        // 4. Create WebView
+        WebView webView = new WebView(cordova.getActivity());
+        WebSettings settings = webView.getSettings();
+
+        settings.setJavaScriptEnabled(true);
+        settings.setDomStorageEnabled(true);
+        settings.setDatabaseEnabled(true);
+        settings.setAllowFileAccess(true);
+        settings.setAllowContentAccess(true);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+        settings.setJavaScriptCanOpenWindowsAutomatically(true);
+
+        // Bridge for SPA client-side URL change reporting
+        webView.addJavascriptInterface(new UrlBridge(id), "EWVUrlBridge");
+
+        // Fallback transport and port handshake for EWV.postMessage
+        webView.addJavascriptInterface(new MessageBridge(id), "EWVMessageBridge");
+
+        // --- PROGRESS BAR (bottom) ---
+        ProgressBar progressBar = new ProgressBar(cordova.getActivity(), null, android.R.attr.progressBarStyleHorizontal);
+        String progressColor = options.has("progressColor") ? options.optString("progressColor") : "#007AFF";
+        try { progressBar.getProgressDrawable().setColorFilter(Color.parseColor(progressColor), PorterDuff.Mode.SRC_IN); } catch (Exception ignored) {}
+        int progressHeightDp = 10;
+        int progressHeightPx = (int) (progressHeightDp * density);
+        FrameLayout.LayoutParams progressParams = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, progressHeightPx, Gravity.BOTTOM);
+        progressBar.setMax(100);
+        progressBar.setVisibility(View.GONE);
+
+        // Respect option to allow external app launches (default: false)
+        final boolean allowExternalApp = options.optBoolean("allowExternalApp", false);
+
+        // SINGLE WEBVIEW CLIENT: navigation lifecycle, blocked handling and external scheme interception
+        webView.setWebViewClient(new WebViewClient() {
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                long traceStart = trace.begin();
+                boolean handled = handleNavigation(id, request.getUrl().toString(), blockedUrls, allowExternalApp);
+                trace.end("webview", "shouldOverrideUrlLoading", traceStart, id);
+                return handled;
+            }
 
-                @Override
-                public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-                    return handleNavigation(view, request.getUrl().toString());
-                }
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                long traceStart = trace.begin();
+                boolean handled = handleNavigation(id, url, blockedUrls, allowExternalApp);
+                trace.end("webview", "shouldOverrideUrlLoading", traceStart, id);
+                return handled;
+            }
 
-                @Override
-                public boolean shouldOverrideUrlLoading(WebView view, String url) {
-                    return handleNavigation(view, url);
-                }
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                if (requestHeaders == null) return null;
+                // `settings`, not view.getSettings(): this runs off the UI thread
+                return fetchWithHeaders(id, requestHeaders, settings.getCacheMode(), request);
+            }
+
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                long traceStart = trace.begin();
+                try {
+                    WebViewInstance current = instances.get(id);
+                    if (current != null) current.mainFrameFailed = false;
+                    progressBar.setVisibility(View.VISIBLE);
+                    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+                        progressBar.setProgress(0, false);
+                        progressBar.setProgress(10, true);
+                    } else {
+                        progressBar.setProgress(0);
+                        progressBar.setProgress(10);
+                    }
+                    injectCookies(view, options, null);
+                    view.evaluateJavascript(URL_TRACK_SCRIPT, null);
+                    view.evaluateJavascript(MESSAGE_SCRIPT, null);
+                    view.evaluateJavascript(POPUP_SCRIPT, null);
+                    fireEvent(id, "loadStart", url);
+                    updateNavigationState(id);
+                } catch (Exception e) { Log.e(TAG, "onPageStarted error", e); }
+                trace.end("webview", "onPageStarted", traceStart, id);
+            }
 
-                private boolean handleNavigation(WebView view, String url) {
-                    if (url == null) return false;
-                    if (checkBlocked(url)) return true;
+            @Override
+            public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+                long traceStart = trace.begin();
+                super.doUpdateVisitedHistory(view, url, isReload);
+                updateNavigationState(id);
+                // Native fallback for SPA client-side navigations (pushState/replaceState/Navigation API).
+                fireUrlChanged(id, url);
+                trace.end("webview", "doUpdateVisitedHistory", traceStart, id);
+            }
 
-                    // Handle intent:// URIs
-                    if (url.startsWith("intent:")) {
-                        if (!allowExternalApp) {
-                            Log.d(TAG, "Blocked intent URI (external apps disabled): " + url);
-                            fireEvent(id, "externalBlocked", url);
-                            return true;
-                        }
-                        try {
-                            Intent intent = Intent.parseUri(url, Intent.URI_INTENT_SCHEME);
-                            cordova.getActivity().startActivity(intent);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to handle intent URI", e);
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                long traceStart = trace.begin();
+                try {
+                    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) progressBar.setProgress(100, true);
+                    else progressBar.setProgress(100);
+                    progressBar.postDelayed(() -> progressBar.setVisibility(View.GONE), 200);
+                    WebViewInstance current = instances.get(id);
+                    if (current != null) {
+                        restoreRetryCacheMode(current);
+                        if (!current.mainFrameFailed) resetRetry(current);
+                        if (current.pendingScrollY >= 0) {
+                            final int scrollX = current.pendingScrollX, scrollY = current.pendingScrollY;
+                            current.pendingScrollX = current.pendingScrollY = -1;
+                            // Give the restored page a layout pass before scrolling
+                            view.postDelayed(() -> view.scrollTo(scrollX, scrollY), 100);
                         }
-                        return true;
                     }
+                    injectCookies(view, options, null);
+                    view.evaluateJavascript(URL_TRACK_SCRIPT, null);
+                    view.evaluateJavascript(MESSAGE_SCRIPT, null);
+                    view.evaluateJavascript(POPUP_SCRIPT, null);
+                    if (isPrefetchPaused(networkProfile)) view.evaluateJavascript(PREFETCH_PAUSE_SCRIPT, null);
+                    updateNavigationState(id);
+                    fireEvent(id, "loadStop", url);
+                } catch (Exception e) { Log.e(TAG, "onPageFinished error", e); }
+                trace.end("webview", "onPageFinished", traceStart, id);
+            }
 
-                    // Common external schemes
-                    if (url.startsWith("tel:") || url.startsWith("mailto:") || url.startsWith("sms:") || url.startsWith("geo:") || url.startsWith("whatsapp:") || url.startsWith("market:")) {
-                        if (!allowExternalApp) {
-                            Log.d(TAG, "Blocked external scheme (external apps disabled): " + url);
-                            fireEvent(id, "externalBlocked", url);
-                            return true;
-                        }
-                        try {
-                            Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                            cordova.getActivity().startActivity(intent);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error opening external app for url: " + url, e);
+            @Override
+            public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+                trace.instant("webview", "onReceivedError", id);
+                handleLoadError(id, request.getUrl().toString(), request.getMethod(), request.isForMainFrame(),
+                        error.getErrorCode(), String.valueOf(error.getDescription()));
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
+                // Pre-M only (main frame); newer devices get the WebResourceError overload above
+                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) return;
+                trace.instant("webview", "onReceivedError", id);
+                // The method is unknown here, so the failure is reported but never retried
+                handleLoadError(id, failingUrl, null, true, errorCode, description);
+            }
+        });
+
+        // Handle progress and target=_blank via WebChromeClient
+        webView.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public void onProgressChanged(WebView view, int newProgress) {
+                try {
+                    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+                        boolean animate = newProgress > progressBar.getProgress();
+                        progressBar.setProgress(newProgress, animate);
+                    } else {
+                        progressBar.setProgress(newProgress);
+                    }
+
+                    if (newProgress == 100) {
+                        progressBar.setVisibility(View.GONE);
+                    } else {
+                        if (progressBar.getVisibility() == View.GONE) {
+                            progressBar.setVisibility(View.VISIBLE);
                         }
-                        return true;
                     }
+                } catch (Exception e) { Log.e(TAG, "onProgressChanged error", e); }
+            }
 
-                    // Allow WebView to load the URL normally
-                    return false;
-                }
+            @Override
+            public boolean onConsoleMessage(ConsoleMessage cm) {
+                String message = cm.message();
+                if (message != null && RESIZE_OBSERVER.foundIn(message)) { return true; }
+                if (consoleFilter != null) forwardConsoleMessage(id, consoleFilter, cm);
+                return super.onConsoleMessage(cm);
+            }
 
-                @Override
-                public void onPageStarted(WebView view, String url, Bitmap favicon) {
-                    try {
-                        progressBar.setVisibility(View.VISIBLE);
-                        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
-                            progressBar.setProgress(0, false);
-                            progressBar.setProgress(10, true);
-                        } else {
-                            progressBar.setProgress(0);
-                            progressBar.setProgress(10);
+            @Override
+            public void onPermissionRequest(final android.webkit.PermissionRequest request) {
+                String[] resources = request.getResources();
+                boolean requestsAudio = false;
+
+                if (resources != null) {
+                    for (String resource : resources) {
+                        if (android.webkit.PermissionRequest.RESOURCE_AUDIO_CAPTURE.equals(resource)) {
+                            requestsAudio = true;
+                            break;
                         }
-                        injectCookies(view, options, null);
-                        view.evaluateJavascript(URL_TRACK_SCRIPT, null);
-                        fireEvent(id, "loadStart", url);
-                        updateNavigationState(id);
-                    } catch (Exception e) { Log.e(TAG, "onPageStarted error", e); }
+                    }
                 }
 
-                @Override
-                public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
-                    super.doUpdateVisitedHistory(view, url, isReload);
-                    updateNavigationState(id);
-                    // Native fallback for SPA client-side navigations (pushState/replaceState/Navigation API).
-                    fireUrlChanged(id, url);
+                if (!requestsAudio) {
+                    request.deny();
+                    return;
                 }
 
-                @Override
-                public void onPageFinished(WebView view, String url) {
-                    try {
-                        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) progressBar.setProgress(100, true);
-                        else progressBar.setProgress(100);
-                        progressBar.postDelayed(() -> progressBar.setVisibility(View.GONE), 200);
-                        injectCookies(view, options, null);
-                        view.evaluateJavascript(URL_TRACK_SCRIPT, null);
-                        updateNavigationState(id);
-                        fireEvent(id, "loadStop", url);
-                    } catch (Exception e) { Log.e(TAG, "onPageFinished error", e); }
+                if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.M) {
+                    request.grant(resources);
+                    return;
                 }
 
-                @Override
-                public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
-                    try {
-                        JSONObject err = new JSONObject();
-                        err.put("url", failingUrl);
-                        err.put("code", errorCode);
-                        err.put("message", description);
-                        fireEvent(id, "loadError", err.toString());
-                    } catch (JSONException ignored) {}
+                if (ContextCompat.checkSelfPermission(cordova.getActivity(), Manifest.permission.RECORD_AUDIO)
+                        == PackageManager.PERMISSION_GRANTED) {
+                    request.grant(resources);
+                    return;
                 }
-            });
 
-            // Handle progress and target=_blank via WebChromeClient
-            webView.setWebChromeClient(new WebChromeClient() {
-                @Override
-                public void onProgressChanged(WebView view, int newProgress) {
-                    try {
-                        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
-                            boolean animate = newProgress > progressBar.getProgress();
-                            progressBar.setProgress(newProgress, animate);
-                        } else {
-                            progressBar.setProgress(newProgress);
-                        }
+                pendingPermissionRequest = request;
+                pendingPermissionResources = resources;
+                ActivityCompat.requestPermissions(
+                        cordova.getActivity(),
+                        new String[]{Manifest.permission.RECORD_AUDIO},
+                        PERMISSION_REQUEST_CODE_AUDIO
+                );
+            }
+        });
 
-                        if (newProgress == 100) {
-                            progressBar.setVisibility(View.GONE);
-                        } else {
-                            if (progressBar.getVisibility() == View.GONE) {
-                                progressBar.setVisibility(View.VISIBLE);
-                            }
-                        }
-                    } catch (Exception e) { Log.e(TAG, "onProgressChanged error", e); }
-                }
+        // Native streaming downloads (off unless options.downloads is set)
+        final File downloadDir = resolveDownloadDir(options);
+        if (downloadDir != null) {
+            webView.setDownloadListener((dlUrl, userAgent, contentDisposition, mimeType, contentLength) ->
+                    startDownload(id, dlUrl, userAgent, contentDisposition, mimeType));
+        }
 
-                @Override
-                public boolean onConsoleMessage(ConsoleMessage cm) {
-                    if (cm.message() != null && cm.message().toLowerCase().contains("resizeobserver")) { return true; }
-                    return super.onConsoleMessage(cm);
-                }
+        // 5. Add WebView to container (so it occupies full area)
+        container.addView(webView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT
+        ));
+
+        // Add progress bar to container so it sits above the WebView at the bottom
+        container.addView(progressBar, progressParams);
+        // Ensure progressBar is on top of the WebView
+        progressBar.bringToFront();
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
+            progressBar.setElevation(10 * density);
+        }
 
-                @Override
-                public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, android.os.Message resultMsg) {
-                    Log.d(TAG, "onCreateWindow triggered for target=_blank");
-                    android.webkit.WebView.WebViewTransport transport = (android.webkit.WebView.WebViewTransport) resultMsg.obj;
-                    WebView newWebView = new WebView(cordova.getActivity());
-                    newWebView.setWebViewClient(new WebViewClient() {
-                        @Override
-                        public boolean shouldOverrideUrlLoading(WebView view, String url) {
-                            Log.d(TAG, "New window URL (target=_blank): " + url);
-                            // Check if this URL is blocked
-                            if (isUrlBlocked(url, blockedUrls)) {
-                                Log.d(TAG, "Navigation blocked (target=_blank) for: " + url);
-                                fireEvent(id, "loadBlocked", url);
-                                return true; // Block the navigation
-                            }
-                            // Handle special schemes (tel, mailto, etc.)
-                            if (url.startsWith("tel:") || url.startsWith("mailto:") || url.startsWith("sms:") || 
-                                url.startsWith("geo:") || url.startsWith("whatsapp:") || url.startsWith("market:")) {
-                                try {
-                                    Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                                    view.getContext().startActivity(intent);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error opening external app for url: " + url, e);
-                                }
-                                return true;
-                            }
-                            // Otherwise load inside the primary webView
-                            try { if (url != null) webView.loadUrl(url); } catch (Exception e) { Log.e(TAG, "Error loading url from new window", e); }
-                            return true;
-                        }
-                    });
-                    transport.setWebView(newWebView);
-                    resultMsg.sendToTarget();
-
-                    // Try to log the URL if available (not always possible)
-                    try {
-                        String possibleUrl = null;
-                        if (view != null && view.getUrl() != null) {
-                            possibleUrl = view.getUrl();
-                            Log.d(TAG, "onCreateWindow: view.getUrl() = " + possibleUrl);
-                            if (isUrlBlocked(possibleUrl, blockedUrls)) {
-                                Log.d(TAG, "Navigation blocked (onCreateWindow) for: " + possibleUrl);
-                                fireEvent(id, "loadBlocked", possibleUrl);
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "onCreateWindow: error checking possible URL", e);
-                    }
-                    return true;
-                }
+        // 6. Apply margins (THIS creates the correct layout window)
+        FrameLayout.LayoutParams containerParams =
+                new FrameLayout.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.MATCH_PARENT
+                );
+
+        containerParams.topMargin = topOffsetPx;
+        // containerParams.bottomMargin = bottomOffsetPx;
+
+        // containerParams.topMargin = 0;
+        containerParams.bottomMargin = bottomOffsetPx;
+
+        // 7. Attach to root
+        rootGroup.addView(container, containerParams);
+        container.bringToFront();
+
+        // 8. Store instance
+        WebViewInstance instance = new WebViewInstance();
+        instance.webView = webView;
+        instance.container = container;
+        instance.progressBar = progressBar;
+        instance.blockedUrls = blockedUrls;
+        instance.historySkipUrls = historySkipUrls;
+        instance.requestHeaders = requestHeaders;
+        instance.retryPolicy = retryPolicy;
+        instance.baseCacheMode = settings.getCacheMode();
+        instance.allowExternalApp = allowExternalApp;
+        instance.preserveMedia = "preserve".equals(options.optString("mediaSuspend", ""));
+        instance.options = options;
+        instance.persistSession = options.optBoolean("persistSession", false);
+        instance.downloadDir = downloadDir;
+        instance.consoleFilter = consoleFilter;
+        JSONObject scriptOptions = options.optJSONObject("scripts");
+        if (scriptOptions != null) {
+            int maxInFlight = scriptOptions.optInt("maxInFlight", DEFAULT_MAX_IN_FLIGHT_SCRIPTS);
+            instance.maxInFlightScripts = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+            instance.rejectScriptsOverLimit = "reject".equals(scriptOptions.optString("overflow", "queue"));
+            instance.defaultScriptTimeoutMs = Math.max(0, scriptOptions.optInt("timeoutMs", 0));
+            instance.reportUnresponsive = scriptOptions.optBoolean("reportUnresponsive", false);
+        }
+        instances.put(id, instance);
+        lastCreatedId = id;
+        if (networkProfile != null) applyNetworkProfile(instance);
+
+        // 9. Load URL, or the saved back/forward list when restoring a session
+        if (restore != null) {
+            instance.pendingScrollX = restore.scrollX;
+            instance.pendingScrollY = restore.scrollY;
+            if (restore.hidden) {
+                container.setVisibility(View.INVISIBLE);
+                instance.hidden = true;
+            }
+        }
+        if (restore == null || restore.state == null || !restoreWebViewState(webView, restore.state)) {
+            webView.loadUrl(url);
+        }
 
-                @Override
-                public void onPermissionRequest(final android.webkit.PermissionRequest request) {
-                    String[] resources = request.getResources();
-                    boolean requestsAudio = false;
-
-                    if (resources != null) {
-                        for (String resource : resources) {
-                            if (android.webkit.PermissionRequest.RESOURCE_AUDIO_CAPTURE.equals(resource)) {
-                                requestsAudio = true;
-                                break;
-                            }
-                        }
-                    }
+        return "WebView created. top=" + topOffsetPx + " bottom=" + bottomOffsetPx;
+    }
 
-                    if (!requestsAudio) {
-                        request.deny();
-                        return;
-                    }
+    // --- LOAD ERRORS AND RETRY ---
 
-                    if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.M) {
-                        request.grant(resources);
-                        return;
-                    }
+    // UI thread. Subresource failures only notify; main-frame transient failures may be retried natively.
+    // Only GET loads are retried: the retry is a plain load of the URL, which would turn a failed
+    // form POST into a GET of its action.
+    private void handleLoadError(String id, String url, String method, boolean isMainFrame, int code,
+            String description) {
+        JSONObject err = new JSONObject();
+        try {
+            err.put("url", url);
+            err.put("code", code);
+            err.put("message", description);
+            err.put("isMainFrame", isMainFrame);
+        } catch (JSONException ignored) {}
+
+        if (!isMainFrame) {
+            fireEvent(id, "resourceError", err.toString());
+            return;
+        }
 
-                    if (ContextCompat.checkSelfPermission(cordova.getActivity(), Manifest.permission.RECORD_AUDIO)
-                            == PackageManager.PERMISSION_GRANTED) {
-                        request.grant(resources);
-                        return;
-                    }
+        WebViewInstance instance = instances.get(id);
+        if (instance != null) {
+            instance.mainFrameFailed = true;
+            // A failed cache-only attempt (usually a cache miss) moves on to the network
+            boolean retryable = RetryPolicy.isTransient(code)
+                    || (instance.retryCacheOnly && url != null && url.equals(instance.retryUrl));
+            if (instance.retryPolicy != null && retryable && "GET".equalsIgnoreCase(method)
+                    && scheduleRetry(id, instance, url, code, description)) {
+                return;
+            }
+        }
+        fireEvent(id, "loadError", err.toString());
+    }
+
+    // Returns false once attempts are exhausted (caller then reports loadError).
+    private boolean scheduleRetry(final String id, final WebViewInstance instance, final String url, int code, String description) {
+        if (url == null) return false;
+        long now = SystemClock.uptimeMillis();
+        if (!url.equals(instance.retryUrl)) {
+            cancelRetry(instance);
+            instance.retryUrl = url;
+            instance.retryStartedAt = now;
+            instance.retryTimings = new JSONArray();
+        }
 
-                    pendingPermissionRequest = request;
-                    pendingPermissionResources = resources;
-                    ActivityCompat.requestPermissions(
-                            cordova.getActivity(),
-                            new String[]{Manifest.permission.RECORD_AUDIO},
-                            PERMISSION_REQUEST_CODE_AUDIO
-                    );
+        try {
+            JSONObject timing = new JSONObject();
+            timing.put("attempt", instance.retryAttempt);
+            timing.put("code", code);
+            timing.put("cacheOnly", instance.retryCacheOnly);
+            timing.put("failedAtMs", now - instance.retryStartedAt);
+            instance.retryTimings.put(timing);
+
+            RetryPolicy policy = instance.retryPolicy;
+            if (instance.retryAttempt >= policy.maxAttempts) {
+                JSONObject data = new JSONObject();
+                data.put("url", url);
+                data.put("attempts", instance.retryAttempt);
+                data.put("code", code);
+                data.put("message", description);
+                data.put("elapsedMs", now - instance.retryStartedAt);
+                data.put("timings", instance.retryTimings);
+                resetRetry(instance);
+                fireEvent(id, "retryExhausted", data.toString());
+                return false;
+            }
+
+            final int attempt = ++instance.retryAttempt;
+            final long delay = policy.delayForAttempt(attempt);
+            final boolean cacheOnly = policy.isCacheOnlyAttempt(attempt);
+
+            JSONObject data = new JSONObject();
+            data.put("url", url);
+            data.put("attempt", attempt);
+            data.put("maxAttempts", policy.maxAttempts);
+            data.put("delayMs", delay);
+            data.put("cacheOnly", cacheOnly);
+            data.put("code", code);
+            data.put("message", description);
+            data.put("elapsedMs", now - instance.retryStartedAt);
+            fireEvent(id, "retrying", data.toString());
+
+            instance.pendingRetry = () -> {
+                instance.pendingRetry = null;
+                if (instances.get(id) != instance || instance.webView == null) return;
+                restoreRetryCacheMode(instance);
+                instance.retryCacheOnly = cacheOnly;
+                if (cacheOnly) {
+                    WebSettings settings = instance.webView.getSettings();
+                    instance.cacheModeBeforeRetry = settings.getCacheMode();
+                    settings.setCacheMode(WebSettings.LOAD_CACHE_ONLY);
                 }
-            });
+                if (instance.loadHeaders != null && url.equals(instance.headersUrl)) {
+                    instance.webView.loadUrl(url, instance.loadHeaders);
+                } else {
+                    instance.webView.loadUrl(url);
+                }
+            };
+            mainHandler.postDelayed(instance.pendingRetry, delay);
+            return true;
+        } catch (JSONException e) {
+            resetRetry(instance);
+            return false;
+        }
+    }
 
-            // 5. Add WebView to container (so it occupies full area)
-            container.addView(webView, new FrameLayout.LayoutParams(
-                    ViewGroup.LayoutParams.MATCH_PARENT,
-                    ViewGroup.LayoutParams.MATCH_PARENT
-            ));
-
-            // Add progress bar to container so it sits above the WebView at the bottom
-            container.addView(progressBar, progressParams);
-            // Ensure progressBar is on top of the WebView
-            progressBar.bringToFront();
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-                progressBar.setElevation(10 * density);
-            }
-
-            // 6. Apply margins (THIS creates the correct layout window)
-            FrameLayout.LayoutParams containerParams =
-                    new FrameLayout.LayoutParams(
-                            ViewGroup.LayoutParams.MATCH_PARENT,
-                            ViewGroup.LayoutParams.MATCH_PARENT
-                    );
-
-            containerParams.topMargin = topOffsetPx;
-            // containerParams.bottomMargin = bottomOffsetPx;
-
-            // containerParams.topMargin = 0;
-            containerParams.bottomMargin = bottomOffsetPx;
-
-            // 7. Attach to root
-            rootGroup.addView(container, containerParams);
-            container.bringToFront();
-
-            // 8. Store instance
-            WebViewInstance instance = new WebViewInstance();
-            instance.webView = webView;
-            instance.container = container;
-            instance.progressBar = progressBar;
-            instance.blockedUrls = blockedUrls;
-            instance.historySkipUrls = historySkipUrls;
-            instances.put(id, instance);
-            lastCreatedId = id;
-
-            // 9. Load URL
-            webView.loadUrl(url);
+    private void restoreRetryCacheMode(WebViewInstance instance) {
+        if (instance.cacheModeBeforeRetry == Integer.MIN_VALUE || instance.webView == null) return;
+        instance.webView.getSettings().setCacheMode(instance.cacheModeBeforeRetry);
+        instance.cacheModeBeforeRetry = Integer.MIN_VALUE;
+    }
+
+    private void resetRetry(WebViewInstance instance) {
+        instance.retryUrl = null;
+        instance.retryAttempt = 0;
+        instance.retryTimings = null;
+        instance.retryCacheOnly = false;
+    }
+
+    // Explicit navigation supersedes any pending automatic retry.
+    private void cancelRetry(WebViewInstance instance) {
+        if (instance.pendingRetry != null) {
+            mainHandler.removeCallbacks(instance.pendingRetry);
+            instance.pendingRetry = null;
+        }
+        restoreRetryCacheMode(instance);
+        resetRetry(instance);
+    }
+
+    // Runs on the WebView's IO thread. Returns null to fall back to the default network stack.
+    // Frames and other navigations ask for HTML; subresources (scripts, images, XHR) do not.
+    private static boolean isDocumentRequest(Map<String, String> headers) {
+        if (headers == null) return false;
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            if ("Accept".equalsIgnoreCase(h.getKey()) && h.getValue() != null && h.getValue().contains("text/html")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Cookies from the shared CookieManager and the instance's scoped headers, looked up per hop.
+    private static NativeFetcher.Hop cookieHop(final RequestHeaderPolicy policy, final boolean document) {
+        final CookieManager cookieManager = CookieManager.getInstance();
+        return new NativeFetcher.Hop() {
+            @Override
+            public Map<String, String> headersFor(String url) {
+                return policy != null ? policy.headersFor(url, document) : null;
+            }
+
+            @Override
+            public String cookiesFor(String url) {
+                return cookieManager.getCookie(url);
+            }
 
-            callbackContext.success("WebView created. top=" + topOffsetPx + " bottom=" + bottomOffsetPx);
+            @Override
+            public void storeCookies(String url, List<String> setCookies) {
+                for (String cookie : setCookies) cookieManager.setCookie(url, cookie);
+            }
+        };
+    }
 
+    private WebResourceResponse fetchWithHeaders(String id, RequestHeaderPolicy policy, int cacheMode,
+            WebResourceRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) return null;
+        // Offline: nothing could reach the network, so let the WebView answer from its cache
+        if (cacheMode == WebSettings.LOAD_CACHE_ONLY) return null;
+        String url = request.getUrl().toString();
+        if (!url.startsWith("http:") && !url.startsWith("https:")) return null;
+        boolean document = request.isForMainFrame() || isDocumentRequest(request.getRequestHeaders());
+        // Cache-first (adaptive loading on metered/slow links, cache-first retry): documents still
+        // need their headers, but subresources stay on the WebView cache that mode is there for
+        if (!document && cacheMode == WebSettings.LOAD_CACHE_ELSE_NETWORK) return null;
+        // Only requests that start at a matching URL are taken over; each hop is re-scoped below
+        if (policy.headersFor(url, document) == null) return null;
+
+        final long traceStart = trace.begin();
+        try {
+            NativeFetcher.Response response = fetcher.get(
+                    url,
+                    request.getRequestHeaders(),
+                    cookieHop(policy, document),
+                    // A main frame gets a redirect document instead, so the WebView's URL stays correct
+                    !request.isForMainFrame()
+            );
+            if (response == null) return null;
+            return new WebResourceResponse(response.mimeType, response.encoding, response.status,
+                    response.reason, response.headers, response.body);
         } catch (Exception e) {
-            Log.e(TAG, "Error creating WebView", e);
-            callbackContext.error(e.getMessage());
+            Log.e(TAG, "Header fetch failed, falling back to default network stack", e);
+            return null;
+        } finally {
+            trace.end("fetch", "shouldInterceptRequest", traceStart, id);
         }
-    });
-}
+    }
+
+    // Shared by shouldOverrideUrlLoading's two overloads: blocked list, intent:// and external schemes.
+    // Returns true when the navigation was consumed here.
+    private boolean handleNavigation(String id, String url, List<String> blockedUrls, boolean allowExternalApp) {
+        if (url == null) return false;
+        if (isUrlBlocked(url, blockedUrls)) {
+            if (trace.isEnabled()) Log.d(TAG, "Blocked navigation: " + url);
+            fireEvent(id, "loadBlocked", url);
+            return true;
+        }
+
+        // Handle intent:// URIs
+        if (url.startsWith("intent:")) {
+            if (!allowExternalApp) {
+                if (trace.isEnabled()) Log.d(TAG, "Blocked intent URI (external apps disabled): " + url);
+                fireEvent(id, "externalBlocked", url);
+                return true;
+            }
+            try {
+                Intent intent = Intent.parseUri(url, Intent.URI_INTENT_SCHEME);
+                cordova.getActivity().startActivity(intent);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to handle intent URI", e);
+            }
+            return true;
+        }
+
+        // Common external schemes
+        if (url.startsWith("tel:") || url.startsWith("mailto:") || url.startsWith("sms:") || url.startsWith("geo:") || url.startsWith("whatsapp:") || url.startsWith("market:")) {
+            if (!allowExternalApp) {
+                if (trace.isEnabled()) Log.d(TAG, "Blocked external scheme (external apps disabled): " + url);
+                fireEvent(id, "externalBlocked", url);
+                return true;
+            }
+            try {
+                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+                cordova.getActivity().startActivity(intent);
+            } catch (Exception e) {
+                Log.e(TAG, "Error opening external app for url: " + url, e);
+            }
+            return true;
+        }
+
+        // Allow WebView to load the URL normally
+        return false;
+    }
 
     private void injectCookies(WebView webView, JSONObject options, String domain) {
         if (options.has("cookies")) {
@@ -641,36 +1281,55 @@ public class EmbeddedWebView extends CordovaPlugin {
     }
 
     private void destroy(final String id, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
-            WebViewInstance instance = instances.remove(id);
-            if (instance != null && instance.webView != null) {
-                try {
-                    instance.webView.stopLoading();
-                    if (instance.container != null) {
-                        ViewGroup parent = (ViewGroup) instance.container.getParent();
-                        if (parent != null) parent.removeView(instance.container);
-                    }
-                    instance.webView.destroy();
-                    instance.webView = null;
-                    if (id.equals(lastCreatedId)) lastCreatedId = instances.isEmpty() ? null : instances.keySet().iterator().next();
-                    if (callbackContext != null) callbackContext.success("WebView destroyed for id=" + id);
-                } catch (Exception e) {
-                    if (callbackContext != null) callbackContext.error("Error: " + e.getMessage());
-                }
-            } else {
-                if (callbackContext != null) callbackContext.error("No WebView to destroy for id=" + id);
-            }
-        });
+        destroy(id, callbackContext, true);
     }
 
-    private void loadUrl(final String id, final String url, final JSONObject headers, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
-            WebViewInstance instance = getInstance(id, callbackContext);
-            if (instance == null) return;
-            
+    // forgetSession=false is used by lifecycle teardown, which must keep persisted sessions on disk.
+    private void destroy(final String id, final CallbackContext callbackContext, final boolean forgetSession) {
+        runQueued("destroy", id, CommandScheduler.KIND_DESTROY, callbackContext,
+                () -> destroyNow(id, callbackContext, forgetSession));
+    }
+
+    // UI thread. Tears the instance down now; used by queued destroy, create's replace path and teardown.
+    private void destroyNow(final String id, final CallbackContext callbackContext, final boolean forgetSession) {
+        WebViewInstance instance = instances.remove(id);
+        boolean hadPendingSession = false;
+        if (forgetSession) {
+            hadPendingSession = pendingSessions.remove(id) != null;
+            if (hadPendingSession || (instance != null && instance.persistSession)) deleteSession(id);
+        }
+        if (instance != null && instance.webView != null) {
+            try {
+                instance.webView.stopLoading();
+                cancelRetry(instance);
+                failScripts(instance, "WebView destroyed");
+                closeMessagePort(instance);
+                if (instance.container != null) {
+                    ViewGroup parent = (ViewGroup) instance.container.getParent();
+                    if (parent != null) parent.removeView(instance.container);
+                }
+                instance.webView.destroy();
+                instance.webView = null;
+                if (id.equals(lastCreatedId)) lastCreatedId = instances.isEmpty() ? null : instances.keySet().iterator().next();
+                if (callbackContext != null) callbackContext.success("WebView destroyed for id=" + id);
+            } catch (Exception e) {
+                if (callbackContext != null) callbackContext.error("Error: " + e.getMessage());
+            }
+        } else if (hadPendingSession) {
+            if (callbackContext != null) callbackContext.success("Saved session discarded for id=" + id);
+        } else {
+            if (callbackContext != null) callbackContext.error("No WebView to destroy for id=" + id);
+        }
+    }
+
+    private void loadUrl(final String id, final String url, final JSONObject headers, final CallbackContext callbackContext) {
+        runQueued("loadUrl", id, CommandScheduler.KIND_NAVIGATION, callbackContext, () -> {
+            WebViewInstance instance = getInstance(id, callbackContext);
+            if (instance == null) return;
+            
             // --- FIX 2: CHECK BLOCKED URL BEFORE PROGRAMMATIC LOAD ---
             if (isUrlBlocked(url, instance.blockedUrls)) {
-                 Log.d(TAG, "Navigation blocked (loadUrl) for: " + url);
+                 if (trace.isEnabled()) Log.d(TAG, "Navigation blocked (loadUrl) for: " + url);
                  fireEvent(id, "loadBlocked", url);
                  if (callbackContext != null) callbackContext.success("Navigation blocked");
                  return;
@@ -678,28 +1337,261 @@ public class EmbeddedWebView extends CordovaPlugin {
             // ---------------------------------------------------------
 
             try {
-                if (headers != null && headers.length() > 0) instance.webView.loadUrl(url, jsonToMap(headers));
+                cancelRetry(instance);
+                instance.headersUrl = url;
+                instance.loadHeaders = headers != null && headers.length() > 0 ? jsonToMap(headers) : null;
+                if (instance.loadHeaders != null) instance.webView.loadUrl(url, instance.loadHeaders);
                 else instance.webView.loadUrl(url);
                 if (callbackContext != null) callbackContext.success("URL loaded");
             } catch (Exception e) { if (callbackContext != null) callbackContext.error(e.getMessage()); }
         });
     }
 
-    private void executeScript(final String id, final String script, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+    private void executeScript(final String id, final String script, final JSONObject options,
+            final CallbackContext callbackContext) {
+        // timeoutMs counts from here, so time spent behind other commands for this id is included
+        final long submittedAt = SystemClock.uptimeMillis();
+        runQueued("executeScript", id, CommandScheduler.KIND_OTHER, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
             if (instance == null) return;
-            instance.webView.evaluateJavascript(script, result -> { if (callbackContext != null) callbackContext.success(result); });
+
+            int timeoutMs = options != null ? options.optInt("timeoutMs", instance.defaultScriptTimeoutMs)
+                    : instance.defaultScriptTimeoutMs;
+            String token = options != null ? options.optString("token", "") : "";
+            if (token.isEmpty()) token = "native-" + (++scriptCounter);
+            if (instance.scripts.containsKey(token)) {
+                callbackContext.error("Script token already in use: " + token);
+                return;
+            }
+            submitScript(id, instance, token, script, timeoutMs, submittedAt, callbackContext);
         });
     }
+
+    // UI thread. Starts a script, or queues it while the instance is at maxInFlightScripts. A
+    // positive timeoutMs runs from submittedAt (SystemClock.uptimeMillis() when the call was made).
+    private void submitScript(final String id, final WebViewInstance instance, String token, String script,
+            int timeoutMs, long submittedAt, CallbackContext callbackContext) {
+        if (timeoutMs > 0 && SystemClock.uptimeMillis() >= submittedAt + timeoutMs) {
+            callbackContext.error("timeout: script did not finish within " + timeoutMs + " ms");
+            return;
+        }
+        boolean atLimit = instance.scriptsInFlight >= instance.maxInFlightScripts;
+        if (atLimit && instance.rejectScriptsOverLimit) {
+            callbackContext.error("Too many scripts in flight (limit " + instance.maxInFlightScripts + ")");
+            return;
+        }
+
+        final PendingScript pending = new PendingScript(token, script, callbackContext, timeoutMs);
+        instance.scripts.put(token, pending);
+        if (timeoutMs > 0) {
+            // The clock covers time in the command queue and the script queue, so callers get an
+            // answer within timeoutMs of the call
+            pending.timeout = () -> timeoutScript(id, instance, pending);
+            mainHandler.postAtTime(pending.timeout, submittedAt + timeoutMs);
+        }
+        if (atLimit) instance.scriptQueue.add(pending);
+        else startScript(id, instance, pending);
+    }
+
+    private void startScript(final String id, final WebViewInstance instance, final PendingScript pending) {
+        pending.started = true;
+        instance.scriptsInFlight++;
+        final long traceStart = trace.begin();
+        instance.webView.evaluateJavascript(pending.script, result -> {
+            trace.end("evaluateJavascript", "executeScript", traceStart, id);
+            // A late answer after a timeout or cancel is dropped
+            if (settleScript(id, instance, pending)) pending.callbackContext.success(result);
+        });
+    }
+
+    // Marks a script finished and frees its slot for the next queued one. False if it already was.
+    // A timed-out or cancelled script may still be running in the page; its slot is freed anyway so
+    // one stuck page cannot hold the queue forever.
+    private boolean settleScript(String id, WebViewInstance instance, PendingScript pending) {
+        if (pending.done) return false;
+        pending.done = true;
+        if (pending.timeout != null) mainHandler.removeCallbacks(pending.timeout);
+        instance.scripts.remove(pending.token);
+        if (pending.started) instance.scriptsInFlight--;
+        else instance.scriptQueue.remove(pending);
+
+        while (instance.webView != null && instance.scriptsInFlight < instance.maxInFlightScripts
+                && !instance.scriptQueue.isEmpty()) {
+            startScript(id, instance, instance.scriptQueue.poll());
+        }
+        return true;
+    }
+
+    private void timeoutScript(String id, WebViewInstance instance, PendingScript pending) {
+        boolean wasRunning = pending.started;
+        if (!settleScript(id, instance, pending)) return;
+        trace.instant("script", "timeout", id);
+        pending.callbackContext.error("timeout: script did not finish within " + pending.timeoutMs + " ms");
+        // Only a script the page was actually running says anything about the page
+        if (instance.reportUnresponsive && wasRunning) {
+            try {
+                JSONObject detail = new JSONObject();
+                detail.put("token", pending.token);
+                detail.put("timeoutMs", pending.timeoutMs);
+                detail.put("inFlight", instance.scriptsInFlight);
+                detail.put("queued", instance.scriptQueue.size());
+                fireEvent(id, "pageUnresponsive", detail.toString());
+            } catch (JSONException ignored) {}
+        }
+    }
+
+    // Queued behind the executeScript it targets, so a cancel issued right after the call finds it.
+    private void cancelScript(final String id, final String token, final CallbackContext callbackContext) {
+        runQueued("cancelScript", id, CommandScheduler.KIND_OTHER, callbackContext, () -> {
+            WebViewInstance instance = instances.get(id);
+            PendingScript pending = instance != null ? instance.scripts.get(token) : null;
+            if (pending == null || !settleScript(id, instance, pending)) {
+                callbackContext.success(0);
+                return;
+            }
+            pending.callbackContext.error("cancelled");
+            callbackContext.success(1);
+        });
+    }
+
+    private void failScripts(WebViewInstance instance, String message) {
+        for (PendingScript pending : new ArrayList<>(instance.scripts.values())) {
+            pending.done = true;
+            if (pending.timeout != null) mainHandler.removeCallbacks(pending.timeout);
+            pending.callbackContext.error(message);
+        }
+        instance.scripts.clear();
+        instance.scriptQueue.clear();
+        instance.scriptsInFlight = 0;
+    }
+
+    // Fan-out: each target gets its own part on that instance's command queue, so the script runs
+    // after whatever was already queued for it; answers are joined into {id: {result}|{error}}.
+    private void executeScriptAll(final String script, final JSONObject options, final CallbackContext callbackContext) {
+        final List<String> ids = new ArrayList<>();
+        JSONArray idArr = options != null ? options.optJSONArray("ids") : null;
+        if (idArr != null) {
+            for (int i = 0; i < idArr.length(); i++) {
+                String target = idArr.optString(i, null);
+                if (target != null && !ids.contains(target)) ids.add(target);
+            }
+        }
+        // 0 means no timeout, as for options.scripts.timeoutMs
+        final int timeoutMs = Math.max(0, options != null
+                ? options.optInt("timeoutMs", SCRIPT_ALL_DEFAULT_TIMEOUT_MS) : SCRIPT_ALL_DEFAULT_TIMEOUT_MS);
+        final long submittedAt = SystemClock.uptimeMillis();
+
+        // An empty list targets nobody; only a missing one means every instance
+        if (idArr != null) {
+            fanOutScript(ids, script, timeoutMs, submittedAt, callbackContext);
+            return;
+        }
+        // "Every instance" is read on the UI thread, which owns the instance map
+        runOnUi("executeScriptAll", null, () ->
+                fanOutScript(new ArrayList<>(instances.keySet()), script, timeoutMs, submittedAt, callbackContext));
+    }
+
+    private void fanOutScript(List<String> ids, final String script, int timeoutMs, long submittedAt,
+            CallbackContext callbackContext) {
+        final ScriptFanOut fanOut = new ScriptFanOut(ids, timeoutMs, submittedAt, callbackContext);
+        if (ids.isEmpty()) {
+            mainHandler.post(fanOut::finish);
+            return;
+        }
+        if (timeoutMs > 0) mainHandler.postAtTime(fanOut.expiry, fanOut.submittedAt + fanOut.timeoutMs);
+        for (final String target : ids) {
+            final FanOutPart part = new FanOutPart(fanOut, target);
+            runQueued("executeScriptAll", target, CommandScheduler.KIND_OTHER, part, () -> {
+                if (fanOut.done) return;
+                WebViewInstance instance = getInstance(target, part);
+                if (instance == null) return;
+                // Takes a slot under the instance's script limit like executeScript, timed out at
+                // the fan-out's deadline
+                submitScript(target, instance, "native-" + (++scriptCounter), script, fanOut.timeoutMs,
+                        fanOut.submittedAt, part);
+            });
+        }
+    }
+
+    // Joins the answers of one executeScriptAll call. UI thread only.
+    private class ScriptFanOut {
+        final List<String> ids;
+        final int timeoutMs;
+        final long submittedAt;
+        final CallbackContext callbackContext;
+        final JSONObject results = new JSONObject();
+        final long traceStart = trace.begin();
+        final Runnable expiry = this::expire;
+        int remaining;
+        boolean done = false;
+
+        ScriptFanOut(List<String> ids, int timeoutMs, long submittedAt, CallbackContext callbackContext) {
+            this.ids = ids;
+            this.timeoutMs = timeoutMs;
+            this.submittedAt = submittedAt;
+            this.callbackContext = callbackContext;
+            this.remaining = ids.size();
+        }
+
+        // A hung or busy instance must not stall the others: whoever has not answered gets an error
+        void expire() {
+            for (String target : ids) answer(target, "error", "timeout");
+        }
+
+        void answer(String target, String key, Object value) {
+            if (done || results.has(target)) return;
+            try {
+                results.put(target, new JSONObject().put(key, value));
+            } catch (JSONException ignored) {}
+            if (--remaining == 0) finish();
+        }
+
+        void finish() {
+            if (done) return;
+            done = true;
+            mainHandler.removeCallbacks(expiry);
+            trace.end("evaluateJavascript", "executeScriptAll", traceStart, null);
+            callbackContext.success(results);
+        }
+    }
+
+    // Stands in for a caller's callback on one fan-out target, so the target's part can go through
+    // the command queue like any other call. Queue completions can arrive on any thread.
+    private class FanOutPart extends CallbackContext {
+        private final ScriptFanOut fanOut;
+        private final String target;
+
+        FanOutPart(ScriptFanOut fanOut, String target) {
+            super(fanOut.callbackContext.getCallbackId(), webView);
+            this.fanOut = fanOut;
+            this.target = target;
+        }
+
+        @Override
+        public void success(final String message) {
+            // evaluateJavascript answers are JSON, so a bare "superseded" can only come from the queue
+            final boolean superseded = CommandScheduler.SUPERSEDED.equals(message);
+            mainHandler.post(() -> fanOut.answer(target, superseded ? "error" : "result", message));
+        }
+
+        @Override
+        public void error(final String message) {
+            mainHandler.post(() -> fanOut.answer(target, "error", message));
+        }
+    }
+
     private void setVisible(final String id, final boolean visible, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+        runQueued("setVisible", id, CommandScheduler.KIND_VISIBILITY, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
             if (instance == null) return;
             
             if (instance.container != null) {
                 instance.container.setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
-                if (!visible) {
+                instance.hidden = !visible;
+                if (instance.preserveMedia) {
+                    if (visible) resumeMedia(id, instance);
+                    else suspendMedia(id, instance);
+                } else if (!visible) {
                     instance.webView.onPause(); 
                     String pauseScript = "javascript:(function(){"
                             + "try {"
@@ -718,17 +1610,47 @@ public class EmbeddedWebView extends CordovaPlugin {
             if (callbackContext != null) callbackContext.success("Visibility: " + visible);
         });
     }
+
+    private void suspendMedia(final String id, final WebViewInstance instance) {
+        final long startedAt = SystemClock.uptimeMillis();
+        instance.webView.evaluateJavascript(MEDIA_SUSPEND_SCRIPT, result -> {
+            // Pause only after the page has recorded its state; a paused WebView stops rendering work
+            if (instance.webView != null && instance.hidden) instance.webView.onPause();
+            fireMediaEvent(id, "mediaSuspended", result, SystemClock.uptimeMillis() - startedAt);
+        });
+    }
+
+    private void resumeMedia(final String id, final WebViewInstance instance) {
+        final long startedAt = SystemClock.uptimeMillis();
+        instance.webView.onResume();
+        instance.webView.evaluateJavascript(MEDIA_RESUME_SCRIPT, result ->
+                fireMediaEvent(id, "mediaResumed", result, SystemClock.uptimeMillis() - startedAt));
+    }
+
+    private void fireMediaEvent(String id, String eventName, String scriptResult, long latencyMs) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("latencyMs", latencyMs);
+            // evaluateJavascript hands back the returned string JSON-encoded
+            Object decoded = scriptResult != null ? new JSONTokener(scriptResult).nextValue() : null;
+            if (decoded instanceof String) data.put("state", new JSONObject((String) decoded));
+            fireEvent(id, eventName, data.toString());
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to report " + eventName, e);
+        }
+    }
+
     private void reload(final String id, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+        runQueued("reload", id, CommandScheduler.KIND_RELOAD, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
-            if (instance != null) { instance.webView.reload(); if (callbackContext != null) callbackContext.success("Reloaded"); }
+            if (instance != null) { cancelRetry(instance); instance.webView.reload(); if (callbackContext != null) callbackContext.success("Reloaded"); }
         });
     }
     
     // --- SMART BACK LOGIC ---
 
     private void goBack(final String id, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+        runQueued("goBack", id, CommandScheduler.KIND_HISTORY, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
             if (instance == null) return;
 
@@ -759,7 +1681,7 @@ public class EmbeddedWebView extends CordovaPlugin {
 
                 if (foundSafePage) {
                     instance.webView.goBackOrForward(stepsToGoBack);
-                    Log.d(TAG, "Smart Skip - Jumping back " + stepsToGoBack + " steps.");
+                    if (trace.isEnabled()) Log.d(TAG, "Smart Skip - Jumping back " + stepsToGoBack + " steps.");
                     final String finalId = id; 
                     instance.webView.postDelayed(() -> updateNavigationState(finalId), 200);
                     if (callbackContext != null) callbackContext.success("Navigated back (Smart)");
@@ -778,7 +1700,7 @@ public class EmbeddedWebView extends CordovaPlugin {
     }
 
     private void goForward(final String id, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+        runQueued("goForward", id, CommandScheduler.KIND_HISTORY, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
             if (instance != null && instance.webView.canGoForward()) { instance.webView.goForward(); if (callbackContext != null) callbackContext.success("Forward"); }
             else if (callbackContext != null) callbackContext.error("Cannot go forward");
@@ -812,7 +1734,7 @@ public class EmbeddedWebView extends CordovaPlugin {
     }
 
     private void canGoBack(final String id, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(() -> {
+        runQueued("canGoBack", id, CommandScheduler.KIND_OTHER, callbackContext, () -> {
             WebViewInstance instance = getInstance(id, callbackContext);
             if (instance != null) { 
                 boolean effective = isEffectiveGoBackAvailable(instance);
@@ -822,7 +1744,7 @@ public class EmbeddedWebView extends CordovaPlugin {
     }
 
     private void clearHistory(final String id, final CallbackContext callbackContext) {
-    cordova.getActivity().runOnUiThread(() -> {
+    runQueued("clearHistory", id, CommandScheduler.KIND_OTHER, callbackContext, () -> {
 
         WebViewInstance instance = getInstance(id, callbackContext);
         if (instance == null) return;
@@ -851,6 +1773,554 @@ public class EmbeddedWebView extends CordovaPlugin {
     });
     }
 
+    // --- MESSAGE CHANNEL ---
+
+    private void postMessage(final String id, final String data, final boolean binary, final CallbackContext callbackContext) {
+        runQueued("postMessage", id, CommandScheduler.KIND_OTHER, callbackContext, () -> {
+            WebViewInstance instance = getInstance(id, callbackContext);
+            if (instance == null) return;
+            try {
+                boolean viaPort = instance.messagePort != null
+                        && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_POST_MESSAGE)
+                        && (!binary || WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER));
+                if (viaPort) {
+                    instance.messagePort.postMessage(binary
+                            ? new WebMessageCompat(Base64.decode(data, Base64.DEFAULT))
+                            : new WebMessageCompat(data));
+                } else {
+                    String js = (binary ? "window.EWV && window.EWV.__receiveBinary(" : "window.EWV && window.EWV.__receive(")
+                            + JSONObject.quote(data) + ");";
+                    instance.webView.evaluateJavascript(js, null);
+                }
+                if (callbackContext != null) callbackContext.success(viaPort ? "port" : "script");
+            } catch (Exception e) {
+                if (callbackContext != null) callbackContext.error(e.getMessage());
+            }
+        });
+    }
+
+    // Called by the page once its listener is installed; every document gets its own channel.
+    private void openMessageChannel(final String id) {
+        WebViewInstance instance = instances.get(id);
+        if (instance == null || instance.webView == null) return;
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.CREATE_WEB_MESSAGE_CHANNEL)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.POST_WEB_MESSAGE)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_SET_MESSAGE_CALLBACK)) {
+            return; // page keeps using EWVMessageBridge
+        }
+
+        try {
+            closeMessagePort(instance);
+            WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(instance.webView);
+            final WebMessagePortCompat nativePort = ports[0];
+            nativePort.setWebMessageCallback(new WebMessagePortCompat.WebMessageCallbackCompat() {
+                @Override
+                public void onMessage(WebMessagePortCompat port, WebMessageCompat message) {
+                    if (message == null) return;
+                    if (message.getType() == WebMessageCompat.TYPE_ARRAY_BUFFER) {
+                        queueMessage(id, null, Base64.encodeToString(message.getArrayBuffer(), Base64.NO_WRAP));
+                    } else {
+                        queueMessage(id, message.getData(), null);
+                    }
+                }
+            });
+            instance.messagePort = nativePort;
+
+            boolean binary = WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER);
+            WebViewCompat.postWebMessage(
+                    instance.webView,
+                    new WebMessageCompat(binary ? "__ewv_port_binary__" : "__ewv_port__", new WebMessagePortCompat[]{ports[1]}),
+                    Uri.parse("*")
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open message channel", e);
+            instance.messagePort = null;
+        }
+    }
+
+    private void closeMessagePort(WebViewInstance instance) {
+        if (instance.messagePort == null) return;
+        try {
+            if (WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_CLOSE)) instance.messagePort.close();
+        } catch (Exception ignored) {}
+        instance.messagePort = null;
+    }
+
+    // UI thread. Buffers a page message and schedules one `message` event per burst.
+    private void queueMessage(final String id, String json, String base64) {
+        WebViewInstance instance = instances.get(id);
+        if (instance == null) return;
+        try {
+            JSONObject message = new JSONObject();
+            if (base64 != null) {
+                message.put("binary", true);
+                message.put("data", base64);
+            } else {
+                Object value;
+                try {
+                    value = json == null ? JSONObject.NULL : new JSONTokener(json).nextValue();
+                } catch (JSONException e) {
+                    value = json;
+                }
+                message.put("data", value);
+            }
+            instance.pendingMessages.put(message);
+        } catch (JSONException e) {
+            Log.e(TAG, "Dropping malformed page message", e);
+            return;
+        }
+
+        if (instance.pendingMessages.length() >= MESSAGE_BATCH_MAX) {
+            flushMessages(id);
+        } else if (!instance.messageFlushScheduled) {
+            instance.messageFlushScheduled = true;
+            mainHandler.postDelayed(() -> flushMessages(id), MESSAGE_BATCH_WINDOW_MS);
+        }
+    }
+
+    private void flushMessages(String id) {
+        WebViewInstance instance = instances.get(id);
+        if (instance == null) return;
+        instance.messageFlushScheduled = false;
+        if (instance.pendingMessages.length() == 0) return;
+        JSONArray batch = instance.pendingMessages;
+        instance.pendingMessages = new JSONArray();
+        try {
+            JSONObject detail = new JSONObject();
+            detail.put("messages", batch);
+            fireEvent(id, "message", detail.toString());
+        } catch (JSONException ignored) {}
+    }
+
+    // --- CONSOLE FORWARDING ---
+
+    // UI thread (onConsoleMessage). Level/pattern filtering and the rate limit run before anything
+    // is allocated, so a page logging in a loop costs little beyond the dropped counter.
+    private void forwardConsoleMessage(final String id, ConsoleFilter filter, ConsoleMessage cm) {
+        int level = consoleLevel(cm.messageLevel());
+        if (!filter.matches(level, cm.message())) return;
+        WebViewInstance instance = instances.get(id);
+        if (instance == null) return;
+
+        if (filter.tryAcquire(System.nanoTime())) {
+            try {
+                JSONObject entry = new JSONObject();
+                entry.put("level", CONSOLE_LEVEL_NAMES[level]);
+                entry.put("message", cm.message());
+                entry.put("source", cm.sourceId());
+                entry.put("line", cm.lineNumber());
+                entry.put("timestamp", System.currentTimeMillis());
+                instance.pendingConsole.put(entry);
+            } catch (JSONException ignored) {}
+        }
+
+        if (instance.pendingConsole.length() >= CONSOLE_BATCH_MAX) {
+            flushConsole(id);
+        } else if (!instance.consoleFlushScheduled) {
+            // Also scheduled for drops alone, so the host learns that output was throttled
+            instance.consoleFlushScheduled = true;
+            mainHandler.postDelayed(() -> flushConsole(id), CONSOLE_BATCH_WINDOW_MS);
+        }
+    }
+
+    private static int consoleLevel(ConsoleMessage.MessageLevel level) {
+        if (level == null) return ConsoleFilter.LEVEL_LOG;
+        switch (level) {
+            case DEBUG: return ConsoleFilter.LEVEL_DEBUG;
+            case WARNING: return ConsoleFilter.LEVEL_WARNING;
+            case ERROR: return ConsoleFilter.LEVEL_ERROR;
+            default: return ConsoleFilter.LEVEL_LOG;
+        }
+    }
+
+    private void flushConsole(String id) {
+        WebViewInstance instance = instances.get(id);
+        if (instance == null || instance.consoleFilter == null) return;
+        instance.consoleFlushScheduled = false;
+        int dropped = instance.consoleFilter.takeDropped();
+        if (instance.pendingConsole.length() == 0 && dropped == 0) return;
+        JSONArray batch = instance.pendingConsole;
+        instance.pendingConsole = new JSONArray();
+        try {
+            JSONObject detail = new JSONObject();
+            detail.put("messages", batch);
+            detail.put("dropped", dropped);
+            detail.put("totalDropped", instance.consoleFilter.totalDropped());
+            fireEvent(id, "consoleMessage", detail.toString());
+        } catch (JSONException ignored) {}
+    }
+
+    // --- ADAPTIVE LOADING ---
+
+    private void setAdaptiveLoading(final boolean enabled, final JSONObject options, final CallbackContext callbackContext) {
+        runOnUi("setAdaptiveLoading", null, () -> {
+            if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.N) {
+                callbackContext.error("Adaptive loading requires Android 7.0 or newer");
+                return;
+            }
+            try {
+                ConnectivityManager cm = (ConnectivityManager) cordova.getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
+                if (!enabled) {
+                    if (networkCallback != null) {
+                        cm.unregisterNetworkCallback(networkCallback);
+                        networkCallback = null;
+                    }
+                    setNetworkProfile(null, 0);
+                    callbackContext.success("off");
+                    return;
+                }
+
+                if (options != null) slowNetworkKbps = options.optInt("slowKbps", slowNetworkKbps);
+
+                if (networkCallback == null) {
+                    networkCallback = new ConnectivityManager.NetworkCallback() {
+                        @Override
+                        public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                            final String profile = classifyNetwork(caps);
+                            final int kbps = caps.getLinkDownstreamBandwidthKbps();
+                            cordova.getActivity().runOnUiThread(() -> {
+                                if (networkCallback == this) setNetworkProfile(profile, kbps);
+                            });
+                        }
+
+                        @Override
+                        public void onLost(Network network) {
+                            cordova.getActivity().runOnUiThread(() -> {
+                                if (networkCallback == this) setNetworkProfile(NETWORK_OFFLINE, 0);
+                            });
+                        }
+                    };
+                    cm.registerDefaultNetworkCallback(networkCallback);
+                }
+
+                Network active = cm.getActiveNetwork();
+                NetworkCapabilities caps = active != null ? cm.getNetworkCapabilities(active) : null;
+                if (caps == null) setNetworkProfile(NETWORK_OFFLINE, 0);
+                else setNetworkProfile(classifyNetwork(caps), caps.getLinkDownstreamBandwidthKbps());
+                callbackContext.success(networkProfile);
+            } catch (Exception e) {
+                Log.e(TAG, "setAdaptiveLoading error", e);
+                callbackContext.error(e.getMessage());
+            }
+        });
+    }
+
+    private String classifyNetwork(NetworkCapabilities caps) {
+        if (!caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) return NETWORK_OFFLINE;
+        int kbps = caps.getLinkDownstreamBandwidthKbps();
+        if (kbps > 0 && kbps < slowNetworkKbps) return NETWORK_SLOW;
+        if (!caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)) return NETWORK_METERED;
+        return NETWORK_UNMETERED;
+    }
+
+    private static boolean isPrefetchPaused(String profile) {
+        return profile != null && !NETWORK_UNMETERED.equals(profile);
+    }
+
+    // UI thread. Applies the profile to every instance; null restores each instance's own settings.
+    private void setNetworkProfile(String profile, int downstreamKbps) {
+        boolean changed = profile == null ? networkProfile != null : !profile.equals(networkProfile);
+        if (!changed) return;
+        networkProfile = profile;
+        for (Map.Entry<String, WebViewInstance> entry : instances.entrySet()) {
+            WebViewInstance instance = entry.getValue();
+            if (instance == null || instance.webView == null) continue;
+            applyNetworkProfile(instance);
+            if (profile == null) continue;
+            try {
+                WebSettings settings = instance.webView.getSettings();
+                JSONObject data = new JSONObject();
+                data.put("profile", profile);
+                data.put("downstreamKbps", downstreamKbps);
+                data.put("cacheMode", instance.cacheModeBeforeRetry != Integer.MIN_VALUE ? instance.cacheModeBeforeRetry : settings.getCacheMode());
+                data.put("blockNetworkImage", settings.getBlockNetworkImage());
+                data.put("prefetchPaused", isPrefetchPaused(profile));
+                fireEvent(entry.getKey(), "networkProfileChanged", data.toString());
+            } catch (JSONException ignored) {}
+        }
+    }
+
+    private void applyNetworkProfile(WebViewInstance instance) {
+        int cacheMode;
+        boolean blockImages = false;
+        if (NETWORK_OFFLINE.equals(networkProfile)) {
+            cacheMode = WebSettings.LOAD_CACHE_ONLY;
+        } else if (NETWORK_SLOW.equals(networkProfile)) {
+            cacheMode = WebSettings.LOAD_CACHE_ELSE_NETWORK;
+            blockImages = true; // deferred: unblocking later fetches the images already referenced
+        } else if (NETWORK_METERED.equals(networkProfile)) {
+            cacheMode = WebSettings.LOAD_CACHE_ELSE_NETWORK;
+        } else {
+            cacheMode = instance.baseCacheMode;
+        }
+
+        WebSettings settings = instance.webView.getSettings();
+        // A cache-only retry in flight restores to this mode when it completes
+        if (instance.cacheModeBeforeRetry != Integer.MIN_VALUE) instance.cacheModeBeforeRetry = cacheMode;
+        else settings.setCacheMode(cacheMode);
+        settings.setBlockNetworkImage(blockImages);
+        instance.webView.evaluateJavascript(isPrefetchPaused(networkProfile) ? PREFETCH_PAUSE_SCRIPT : PREFETCH_RESUME_SCRIPT, null);
+    }
+
+    // --- DOWNLOADS ---
+
+    // options.downloads: true, or { directory: 'files' | 'cache' | 'external', maxConcurrent }.
+    // Returns null when downloads are off.
+    private File resolveDownloadDir(JSONObject options) {
+        JSONObject downloads = options.optJSONObject("downloads");
+        if (downloads == null && !options.optBoolean("downloads", false)) return null;
+        String where = downloads != null ? downloads.optString("directory", "files") : "files";
+        Context context = cordova.getActivity();
+        File base;
+        if ("cache".equals(where)) base = context.getCacheDir();
+        else if ("external".equals(where)) base = context.getExternalFilesDir(null);
+        else base = context.getFilesDir();
+        if (base == null) base = context.getFilesDir();
+        if (downloads != null && downloads.has("maxConcurrent")) {
+            obtainDownloader().setMaxConcurrent(downloads.optInt("maxConcurrent", StreamingDownloader.DEFAULT_MAX_CONCURRENT));
+        }
+        return new File(base, "downloads");
+    }
+
+    private StreamingDownloader obtainDownloader() {
+        if (downloader == null) downloader = new StreamingDownloader(StreamingDownloader.DEFAULT_MAX_CONCURRENT);
+        return downloader;
+    }
+
+    // UI thread (DownloadListener). Streams the response to the instance's download directory with
+    // the same cookies, user agent and request headers the page would have used.
+    private void startDownload(final String id, final String url, String userAgent,
+            String contentDisposition, final String mimeType) {
+        WebViewInstance instance = instances.get(id);
+        if (instance == null || instance.downloadDir == null) return;
+
+        final String downloadId = "dl-" + (++downloadCounter);
+        String fileName = URLUtil.guessFileName(url, contentDisposition, mimeType);
+        if (fileName == null || fileName.isEmpty()) fileName = "download";
+        fileName = fileName.replace('/', '_').replace('\\', '_');
+
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            // blob: and data: URLs live in the page and cannot be fetched natively
+            fireDownloadEvent(id, "downloadError", downloadId, url, new File(instance.downloadDir, fileName),
+                    mimeType, 0, -1, "Unsupported download URL scheme");
+            return;
+        }
+
+        // Cookies and requestHeaders are looked up per redirect hop by the downloader
+        Map<String, String> headers = new HashMap<>();
+        if (userAgent != null) headers.put("User-Agent", userAgent);
+        String referer = instance.webView.getUrl();
+        if (referer != null && referer.startsWith("http")) headers.put("Referer", referer);
+
+        if (trace.isEnabled()) Log.d(TAG, "Download " + downloadId + " (id=" + id + "): " + url + " -> " + fileName);
+        trace.instant("download", "start", id);
+        activeDownloads.put(downloadId, id);
+
+        // The final file name (a "-n" suffix when taken) is picked off the UI thread
+        obtainDownloader().start(downloadId, url, headers, cookieHop(instance.requestHeaders, true),
+                instance.downloadDir, fileName, new StreamingDownloader.Listener() {
+            @Override
+            public void onProgress(String dlId, File file, long received, long total) {
+                fireDownloadEvent(id, "downloadProgress", dlId, url, file, mimeType, received, total, null);
+            }
+
+            @Override
+            public void onComplete(String dlId, File file, long bytes) {
+                activeDownloads.remove(dlId);
+                fireDownloadEvent(id, "downloadComplete", dlId, url, file, mimeType, bytes, bytes, null);
+            }
+
+            @Override
+            public void onError(String dlId, File file, String message, boolean resumable) {
+                activeDownloads.remove(dlId);
+                fireDownloadEvent(id, "downloadError", dlId, url, file, mimeType,
+                        resumable ? StreamingDownloader.partFileFor(file).length() : 0, -1, message);
+            }
+        });
+    }
+
+    private void fireDownloadEvent(String id, String eventName, String downloadId, String url, File file,
+            String mimeType, long received, long total, String error) {
+        JSONObject detail = new JSONObject();
+        try {
+            detail.put("downloadId", downloadId);
+            detail.put("url", url);
+            detail.put("fileName", file.getName());
+            detail.put("path", file.getAbsolutePath());
+            if (mimeType != null) detail.put("mimeType", mimeType);
+            detail.put("received", received);
+            detail.put("total", total);
+            if (error != null) detail.put("error", error);
+        } catch (JSONException ignored) {}
+        fireEvent(id, eventName, detail.toString());
+    }
+
+    private void cancelDownload(final String downloadId, final CallbackContext callbackContext) {
+        if (downloader == null || !activeDownloads.containsKey(downloadId)) {
+            callbackContext.error("No active download for id: " + downloadId);
+            return;
+        }
+        downloader.cancel(downloadId);
+        callbackContext.success(downloadId);
+    }
+
+    // --- SESSION PERSISTENCE ---
+
+    private SessionStore sessionStore() {
+        if (sessionStore == null) {
+            sessionStore = new SessionStore(new File(cordova.getActivity().getNoBackupFilesDir(), "embedded-webview-sessions"));
+        }
+        return sessionStore;
+    }
+
+    // UI thread (saveState must run there); the file writes happen on sessionIo.
+    private void saveSessions() {
+        final List<SessionStore.Record> records = new ArrayList<>();
+        for (Map.Entry<String, WebViewInstance> entry : instances.entrySet()) {
+            WebViewInstance instance = entry.getValue();
+            if (instance == null || instance.webView == null || !instance.persistSession) continue;
+            try {
+                SessionStore.Record record = new SessionStore.Record();
+                record.id = entry.getKey();
+                record.url = instance.webView.getUrl();
+                record.options = persistableOptions(instance.options);
+                record.scrollX = instance.webView.getScrollX();
+                record.scrollY = instance.webView.getScrollY();
+                record.hidden = instance.hidden;
+                record.savedAt = System.currentTimeMillis();
+                Bundle state = new Bundle();
+                if (instance.webView.saveState(state) != null) record.state = encodeWebViewState(state);
+                records.add(record);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to capture session for id=" + entry.getKey(), e);
+            }
+        }
+        if (records.isEmpty()) return;
+        final SessionStore store = sessionStore();
+        sessionIo.execute(() -> {
+            for (SessionStore.Record record : records) {
+                try {
+                    store.save(record);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to save session for id=" + record.id, e);
+                }
+            }
+        });
+    }
+
+    // Credentials are never written to disk; the host passes them again to restoreSessions
+    private static JSONObject persistableOptions(JSONObject options) throws JSONException {
+        JSONObject copy = new JSONObject(options.toString());
+        for (String key : UNPERSISTED_OPTIONS) copy.remove(key);
+        return copy;
+    }
+
+    private void deleteSession(final String id) {
+        final SessionStore store = sessionStore();
+        sessionIo.execute(() -> store.delete(id));
+    }
+
+    private void clearSessions() {
+        pendingSessions.clear();
+        final SessionStore store = sessionStore();
+        sessionIo.execute(store::clear);
+    }
+
+    // Reads saved sessions but does not build anything: each one is rebuilt the first time its
+    // id is used (see getInstance), so startup is not blocked recreating every WebView.
+    // `credentials` maps an id to the unpersisted options ({ cookies, requestHeaders }) to rebuild it with.
+    private void restoreSessions(final JSONObject credentials, final CallbackContext callbackContext) {
+        final SessionStore store = sessionStore();
+        sessionIo.execute(() -> {
+            final List<SessionStore.Record> records = store.loadAll();
+            cordova.getActivity().runOnUiThread(() -> {
+                JSONArray restorable = new JSONArray();
+                try {
+                    for (SessionStore.Record record : records) {
+                        if (instances.containsKey(record.id)) continue;
+                        JSONObject supplied = credentials != null ? credentials.optJSONObject(record.id) : null;
+                        if (supplied != null) {
+                            for (String key : UNPERSISTED_OPTIONS) {
+                                if (supplied.has(key)) record.options.put(key, supplied.get(key));
+                            }
+                        }
+                        pendingSessions.put(record.id, record);
+                        JSONObject item = new JSONObject();
+                        item.put("id", record.id);
+                        item.put("url", record.url);
+                        item.put("hidden", record.hidden);
+                        item.put("savedAt", record.savedAt);
+                        restorable.put(item);
+                    }
+                    callbackContext.success(restorable);
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            });
+        });
+    }
+
+    // UI thread. Rebuilds a pending session on first use; returns null if that fails.
+    private WebViewInstance restoreSession(String id) {
+        SessionStore.Record record = pendingSessions.remove(id);
+        if (record == null || record.url == null) return null;
+        try {
+            final long traceStart = trace.begin();
+            buildInstance(id, record.url, record.options, record);
+            trace.end("session", "restoreSession", traceStart, id);
+            fireEvent(id, "sessionRestored", record.url);
+            return instances.get(id);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to restore session for id=" + id, e);
+            return null;
+        }
+    }
+
+    // Only the byte[] entries of the saveState bundle are kept (Chromium puts its whole state in one);
+    // Parcel.marshall() output is not meant to outlive the process that wrote it.
+    private static JSONObject encodeWebViewState(Bundle bundle) throws JSONException {
+        JSONObject encoded = new JSONObject();
+        for (String key : bundle.keySet()) {
+            byte[] value = bundle.getByteArray(key);
+            if (value != null) encoded.put(key, Base64.encodeToString(value, Base64.NO_WRAP));
+        }
+        return encoded.length() > 0 ? encoded : null;
+    }
+
+    // False when the saved state cannot be used (e.g. written by another WebView version).
+    private static boolean restoreWebViewState(WebView webView, JSONObject encoded) {
+        try {
+            Bundle state = new Bundle();
+            for (Iterator<String> it = encoded.keys(); it.hasNext(); ) {
+                String key = it.next();
+                state.putByteArray(key, Base64.decode(encoded.getString(key), Base64.DEFAULT));
+            }
+            return webView.restoreState(state) != null;
+        } catch (Exception e) {
+            Log.e(TAG, "Saved WebView state unusable, loading URL instead", e);
+            return false;
+        }
+    }
+
+    private void setTracing(final boolean enabled, final int capacity, final CallbackContext callbackContext) {
+        trace.setEnabled(enabled, capacity);
+        if (callbackContext != null) callbackContext.success("Tracing: " + enabled);
+    }
+
+    // Serialising a full buffer is not free, so it runs off the UI thread.
+    private void dumpTrace(final boolean clear, final CallbackContext callbackContext) {
+        cordova.getThreadPool().execute(() -> {
+            try {
+                JSONObject json = trace.toChromeTrace();
+                if (clear) trace.clear();
+                callbackContext.success(json);
+            } catch (Exception e) {
+                Log.e(TAG, "dumpTrace error", e);
+                callbackContext.error(e.getMessage());
+            }
+        });
+    }
+
     private Map<String, String> jsonToMap(JSONObject json) throws JSONException {
         Map<String, String> map = new HashMap<>();
         Iterator<String> keys = json.keys();
@@ -925,17 +2395,19 @@ public class EmbeddedWebView extends CordovaPlugin {
 
         final String js = "window.setTimeout(function(){ " +
                 "try { " +
-                "  console.log('[Native] Firing: " + fullEventName + "'); " +
+                (trace.isEnabled() ? "  console.log('[Native] Firing: " + fullEventName + "'); " : "") +
                 "  var evt = new CustomEvent('" + fullEventName + "', { detail: " + payload + ", bubbles: true, cancelable: true }); " +
                 "  document.dispatchEvent(evt); " +
                 "} catch(e) { console.error('Error firing native event', e); } " +
                 "}, 0);";
 
+        final long traceStart = trace.begin();
         cordova.getActivity().runOnUiThread(() -> {
             try {
                 if (cordovaWebView != null && cordovaWebView.getEngine() != null) {
                     if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT) {
-                        cordovaWebView.getEngine().evaluateJavascript(js, null);
+                        cordovaWebView.getEngine().evaluateJavascript(js, traceStart == 0L ? null
+                                : result -> trace.end("fireEvent", eventName, traceStart, id));
                     } else {
                         cordovaWebView.loadUrl("javascript:" + js);
                     }
@@ -948,6 +2420,71 @@ public class EmbeddedWebView extends CordovaPlugin {
         });
     }
     
-    @Override public void onDestroy() { for (String id : new HashMap<>(instances).keySet()) destroy(id, null); instances.clear(); super.onDestroy(); }
-    @Override public void onReset() { for (String id : new HashMap<>(instances).keySet()) destroy(id, null); instances.clear(); super.onReset(); }
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        // The process may be killed any time after this, so persist opted-in sessions now
+        saveSessions();
+        // pauseTimers() is process-wide and would also freeze the host page, so it is only used
+        // once the app is in the background and every instance opted in and is suspended.
+        // `multitasking` is Cordova's KeepRunning preference: when true the app asked for its JS to
+        // keep running in the background, so timers are left alone.
+        if (multitasking || instances.isEmpty() || timersPaused) return;
+        WebView any = null;
+        for (WebViewInstance instance : instances.values()) {
+            if (instance == null || instance.webView == null) continue;
+            if (!instance.preserveMedia || !instance.hidden) return;
+            any = instance.webView;
+        }
+        if (any != null) {
+            any.pauseTimers();
+            timersPaused = true;
+        }
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        if (!timersPaused) return;
+        timersPaused = false;
+        // Timers are global, so any live WebView can resume them (instances may be gone by now)
+        View host = cordovaWebView != null ? cordovaWebView.getView() : null;
+        if (host instanceof WebView) {
+            ((WebView) host).resumeTimers();
+            return;
+        }
+        for (WebViewInstance instance : instances.values()) {
+            if (instance != null && instance.webView != null) {
+                instance.webView.resumeTimers();
+                return;
+            }
+        }
+    }
+
+    @Override public void onDestroy() {
+        unregisterNetworkCallback();
+        if (downloader != null) {
+            // Part files stay on disk, so the same download started again later resumes
+            for (String downloadId : activeDownloads.keySet()) downloader.cancel(downloadId);
+        }
+        // Persistence covers process death; a user-finished activity starts clean next time
+        if (cordova.getActivity().isFinishing()) clearSessions();
+        commands.cancelAll();
+        for (String id : new HashMap<>(instances).keySet()) destroyNow(id, null, false);
+        instances.clear();
+        // Writes already queued still run; the executor's thread then exits
+        sessionIo.shutdown();
+        super.onDestroy();
+    }
+    private void unregisterNetworkCallback() {
+        if (networkCallback == null) return;
+        try {
+            ConnectivityManager cm = (ConnectivityManager) cordova.getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
+            cm.unregisterNetworkCallback(networkCallback);
+        } catch (Exception ignored) {}
+        networkCallback = null;
+        networkProfile = null;
+    }
+
+    @Override public void onReset() { commands.cancelAll(); for (String id : new HashMap<>(instances).keySet()) destroyNow(id, null, false); instances.clear(); super.onReset(); }
 }
\ No newline at end of file
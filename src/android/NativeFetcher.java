@@ -0,0 +1,248 @@
+package com.cb4rr.cordova.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Native HTTP GET path used when the plugin has to add headers the WebView network stack cannot.
+ *
+ * Uses {@link HttpURLConnection}, whose process-wide keep-alive pool is shared by every instance:
+ * a connection goes back to the pool once its body stream has been read to the end and closed,
+ * which is what the streaming {@link Response#body} does. Nothing is buffered in memory.
+ *
+ * Pure java.net so it can be exercised against a local HTTP server without a device.
+ */
+final class NativeFetcher {
+
+    static final int CONNECT_TIMEOUT_MS = 15000;
+    static final int READ_TIMEOUT_MS = 30000;
+    static final int MAX_REDIRECTS = 20;
+
+    /** A response whose body is still streaming from the network. */
+    static final class Response {
+        final String url;
+        final int status;
+        final String reason;
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final InputStream body;
+
+        Response(String url, int status, String reason, String mimeType, String encoding,
+                Map<String, String> headers, InputStream body) {
+            this.url = url;
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Credentials for one hop of a request. Re-evaluated for every URL in a redirect chain, so
+     * cookies and scoped headers only ever go to the hosts they belong to.
+     */
+    interface Hop {
+        /** Extra headers for a request to {@code url} (overriding same-named ones), or null. */
+        Map<String, String> headersFor(String url);
+
+        /** Value for the Cookie header of a request to {@code url}, or null. */
+        String cookiesFor(String url);
+
+        /** Stores the Set-Cookie values {@code url} answered with. */
+        void storeCookies(String url, List<String> setCookies);
+    }
+
+    /**
+     * Issues a GET for {@code url}, following redirects hop by hop.
+     *
+     * @param requestHeaders  headers the WebView would have sent (may be null)
+     * @param hop             per-hop cookies and headers
+     * @param followRedirects follow redirects here; when false a redirect is answered with a small
+     *                        document that sends the WebView to the target itself (a main frame
+     *                        must navigate, or its URL would be wrong)
+     * @return the response, or null if a redirect had no usable Location
+     */
+    Response get(String url, Map<String, String> requestHeaders, Hop hop, boolean followRedirects)
+            throws IOException {
+        String originHost = new URL(url).getHost();
+        for (int redirects = 0; ; redirects++) {
+            HttpURLConnection conn = open(url, requestHeaders, hop, originHost);
+            int status = conn.getResponseCode();
+            List<String> setCookies = headerValues(conn, "Set-Cookie");
+            if (!setCookies.isEmpty()) hop.storeCookies(url, setCookies);
+
+            if (status < 300 || status >= 400) return toResponse(url, status, conn);
+
+            // Redirect: drain so the socket can be reused, then decide where to go next
+            String target = resolveLocation(url, conn.getHeaderField("Location"));
+            closeQuietly(conn.getInputStream());
+            if (target == null) return null;
+            if (!followRedirects) return redirectDocument(url, target);
+            if (redirects >= MAX_REDIRECTS) throw new IOException("Too many redirects from " + url);
+            url = target;
+        }
+    }
+
+    private static HttpURLConnection open(String url, Map<String, String> requestHeaders, Hop hop,
+            String originHost) throws IOException {
+        URL parsed = new URL(url);
+        boolean sameHost = parsed.getHost().equalsIgnoreCase(originHost);
+        HttpURLConnection conn = (HttpURLConnection) parsed.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setInstanceFollowRedirects(false);
+        conn.setUseCaches(false);
+
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> h : requestHeaders.entrySet()) {
+                String name = h.getKey();
+                // Let HttpURLConnection negotiate and transparently decode compression;
+                // an intercepted response is handed to the renderer as-is.
+                if ("Accept-Encoding".equalsIgnoreCase(name) || "Cookie".equalsIgnoreCase(name)) continue;
+                if (!sameHost && "Authorization".equalsIgnoreCase(name)) continue;
+                conn.setRequestProperty(name, h.getValue());
+            }
+        }
+        String cookies = hop.cookiesFor(url);
+        if (cookies != null && !cookies.isEmpty()) conn.setRequestProperty("Cookie", cookies);
+        Map<String, String> extra = hop.headersFor(url);
+        if (extra != null) {
+            for (Map.Entry<String, String> h : extra.entrySet()) {
+                conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+        return conn;
+    }
+
+    private static Response toResponse(String url, int status, HttpURLConnection conn) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> h : conn.getHeaderFields().entrySet()) {
+            String name = h.getKey();
+            if (name == null || h.getValue() == null) continue; // status line
+            // Cookies were stored per hop; the body is already decoded and streamed, so the
+            // encoding and length headers no longer describe it
+            if ("Set-Cookie".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name)
+                    || "Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)) {
+                continue;
+            }
+            headers.put(name, join(h.getValue()));
+        }
+
+        String mimeType = "application/octet-stream";
+        String encoding = null;
+        String contentType = conn.getContentType();
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String p = parts[i].trim();
+                if (p.toLowerCase(Locale.US).startsWith("charset=")) {
+                    encoding = p.substring(8).replace("\"", "").trim();
+                }
+            }
+        }
+
+        String reason = conn.getResponseMessage();
+        if (reason == null || reason.trim().isEmpty()) reason = status < 400 ? "OK" : "Error";
+
+        // Closing this stream (not disconnecting) returns the connection to the keep-alive pool
+        InputStream body = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (body == null) body = new ByteArrayInputStream(new byte[0]);
+
+        return new Response(url, status, reason, mimeType, encoding,
+                Collections.unmodifiableMap(headers), body);
+    }
+
+    /** All values of a header, matching its name case-insensitively. */
+    static List<String> headerValues(HttpURLConnection conn, String name) {
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, List<String>> h : conn.getHeaderFields().entrySet()) {
+            if (name.equalsIgnoreCase(h.getKey()) && h.getValue() != null) values.addAll(h.getValue());
+        }
+        return values;
+    }
+
+    /** Absolute http(s) URL for a Location header, or null if there is none or it is unusable. */
+    static String resolveLocation(String base, String location) {
+        if (location == null || location.isEmpty()) return null;
+        try {
+            URL target = new URL(new URL(base), location);
+            String protocol = target.getProtocol();
+            return "http".equals(protocol) || "https".equals(protocol) ? target.toString() : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A document that replaces itself with {@code target}. WebResourceResponse cannot carry a 3xx,
+     * and handing the request back to the WebView would repeat a GET the server already answered
+     * (breaking single-use links such as OAuth callbacks).
+     */
+    static Response redirectDocument(String url, String target) {
+        String html = "<!DOCTYPE html><html><head>"
+                + "<meta http-equiv=\"refresh\" content=\"0;url=" + escapeHtml(target) + "\">"
+                + "<script>location.replace(\"" + escapeJs(target) + "\");</script>"
+                + "</head><body></body></html>";
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Cache-Control", "no-store");
+        byte[] bytes;
+        try {
+            bytes = html.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Response(url, 200, "OK", "text/html", "utf-8",
+                Collections.unmodifiableMap(headers), new ByteArrayInputStream(bytes));
+    }
+
+    private static String escapeHtml(String s) {
+        return s.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String escapeJs(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\' || c == '<' || c == '>' || c == '\'') {
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String join(List<String> values) {
+        if (values.size() == 1) return values.get(0);
+        StringBuilder sb = new StringBuilder();
+        for (String v : values) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            byte[] buf = new byte[1024];
+            while (in.read(buf) != -1) { /* drain */ }
+            in.close();
+        } catch (IOException ignored) {}
+    }
+}
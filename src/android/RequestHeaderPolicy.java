@@ -0,0 +1,140 @@
+package com.cb4rr.cordova.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-instance default request headers, optionally scoped by URL pattern.
+ *
+ * Accepts either a plain header object (applied to every document) or an array of rules:
+ * <pre>
+ * [
+ *   { "pattern": "api.example.com", "headers": { "Authorization": "Bearer ..." }, "subresources": true },
+ *   { "headers": { "X-Tenant": "acme" } }          // no pattern = every URL
+ * ]
+ * </pre>
+ * Because rules usually carry credentials, a pattern is not a substring like {@code blockedUrls}
+ * but a scope on the parsed URL: {@code [scheme://]host[/path]}. The rule applies when the URL's
+ * host is that host or a subdomain of it, the scheme (if given) is the same, and the path (if
+ * given) is a prefix of the URL's path. {@code https://evil.example/?next=api.example.com} does
+ * not match {@code api.example.com}. When several rules match, later rules override earlier ones
+ * header by header.
+ *
+ * Rules apply to document requests (main frame and frames) only, unless they set
+ * {@code subresources}: a subresource fetched natively bypasses the WebView HTTP cache.
+ */
+final class RequestHeaderPolicy {
+
+    private static final class Rule {
+        /** Null for every URL; otherwise the scope parsed from the pattern. */
+        final String scheme;
+        final String host;
+        final String pathPrefix;
+        final Map<String, String> headers;
+        final boolean subresources;
+
+        Rule(String pattern, Map<String, String> headers, boolean subresources) {
+            String rest = pattern;
+            String scheme = null;
+            if (rest != null) {
+                int sep = rest.indexOf("://");
+                if (sep > 0) {
+                    scheme = rest.substring(0, sep).toLowerCase(Locale.US);
+                    rest = rest.substring(sep + 3);
+                }
+            }
+            int slash = rest != null ? rest.indexOf('/') : -1;
+            this.scheme = scheme;
+            this.host = rest != null ? (slash >= 0 ? rest.substring(0, slash) : rest).toLowerCase(Locale.US) : null;
+            this.pathPrefix = slash >= 0 ? rest.substring(slash) : null;
+            this.headers = headers;
+            this.subresources = subresources;
+        }
+
+        boolean matches(String urlScheme, String urlHost, String urlPath) {
+            if (host == null) return true;
+            if (urlHost == null) return false;
+            if (scheme != null && !scheme.equals(urlScheme)) return false;
+            if (!urlHost.equals(host) && !urlHost.endsWith("." + host)) return false;
+            if (pathPrefix == null) return true;
+            // "/v1" covers "/v1" and "/v1/...", not "/v10"
+            return urlPath != null && urlPath.startsWith(pathPrefix) && (urlPath.length() == pathPrefix.length()
+                    || pathPrefix.endsWith("/") || urlPath.charAt(pathPrefix.length()) == '/');
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private RequestHeaderPolicy(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /** Parses {@code options.requestHeaders}; returns null when the option is absent or empty. */
+    static RequestHeaderPolicy fromOptions(JSONObject options) throws JSONException {
+        if (options == null || !options.has("requestHeaders")) return null;
+
+        List<Rule> rules = new ArrayList<>();
+        JSONArray arr = options.optJSONArray("requestHeaders");
+        if (arr != null) {
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject rule = arr.getJSONObject(i);
+                String pattern = rule.optString("pattern", null);
+                if (pattern != null && pattern.isEmpty()) pattern = null;
+                Map<String, String> headers = toMap(rule.optJSONObject("headers"));
+                if (!headers.isEmpty()) rules.add(new Rule(pattern, headers, rule.optBoolean("subresources", false)));
+            }
+        } else {
+            Map<String, String> headers = toMap(options.optJSONObject("requestHeaders"));
+            if (!headers.isEmpty()) rules.add(new Rule(null, headers, false));
+        }
+        return rules.isEmpty() ? null : new RequestHeaderPolicy(rules);
+    }
+
+    /**
+     * Headers to add to a request for {@code url}, or null if no rule applies.
+     *
+     * @param document whether the request loads a document (main frame or frame)
+     */
+    Map<String, String> headersFor(String url, boolean document) {
+        if (url == null) return null;
+        String scheme = null, host = null, path = null;
+        try {
+            URI uri = new URI(url);
+            if (uri.getScheme() != null) scheme = uri.getScheme().toLowerCase(Locale.US);
+            if (uri.getHost() != null) host = uri.getHost().toLowerCase(Locale.US);
+            path = uri.getRawPath();
+            if (path == null || path.isEmpty()) path = "/";
+        } catch (URISyntaxException ignored) {
+            // Only pattern-less rules can apply to a URL that does not parse
+        }
+        Map<String, String> merged = null;
+        for (Rule rule : rules) {
+            if (!document && !rule.subresources) continue;
+            if (!rule.matches(scheme, host, path)) continue;
+            if (merged == null) merged = new LinkedHashMap<>();
+            merged.putAll(rule.headers);
+        }
+        return merged;
+    }
+
+    private static Map<String, String> toMap(JSONObject json) throws JSONException {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (json == null) return map;
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, json.getString(key));
+        }
+        return map;
+    }
+}
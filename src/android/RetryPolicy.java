@@ -0,0 +1,81 @@
+package com.cb4rr.cordova.plugin;
+
+import org.json.JSONObject;
+
+import android.webkit.WebViewClient;
+
+import java.util.Random;
+
+/**
+ * Per-instance retry policy for transient main-frame load failures ({@code options.retry}).
+ *
+ * <pre>
+ * retry: {
+ *   maxAttempts: 3,      // retries after the first failure (0 disables)
+ *   baseDelayMs: 500,    // backoff base; attempt n waits ~ base * 2^(n-1), capped
+ *   maxDelayMs: 8000,
+ *   cacheFirst: false    // first retry renders from cache only, skipping the network
+ * }
+ * </pre>
+ */
+final class RetryPolicy {
+
+    final int maxAttempts;
+    final long baseDelayMs;
+    final long maxDelayMs;
+    final boolean cacheFirst;
+
+    private final Random random = new Random();
+
+    private RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, boolean cacheFirst) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.cacheFirst = cacheFirst;
+    }
+
+    /** Parses {@code options.retry}; null when absent or disabled. {@code retry: true} uses the defaults. */
+    static RetryPolicy fromOptions(JSONObject options) {
+        if (options == null || !options.has("retry")) return null;
+        JSONObject retry = options.optJSONObject("retry");
+        if (retry == null) {
+            return options.optBoolean("retry", false) ? new RetryPolicy(3, 500, 8000, false) : null;
+        }
+        int maxAttempts = retry.optInt("maxAttempts", 3);
+        if (maxAttempts <= 0) return null;
+        long base = Math.max(0, retry.optLong("baseDelayMs", 500));
+        long max = Math.max(base, retry.optLong("maxDelayMs", 8000));
+        return new RetryPolicy(maxAttempts, base, max, retry.optBoolean("cacheFirst", false));
+    }
+
+    /**
+     * WebViewClient error codes worth retrying: the request may well succeed a moment later.
+     * ERROR_TOO_MANY_REQUESTS is the WebView giving up on a load that issued too many requests,
+     * not an HTTP 429 (HTTP statuses never reach onReceivedError).
+     */
+    static boolean isTransient(int errorCode) {
+        switch (errorCode) {
+            case WebViewClient.ERROR_HOST_LOOKUP:
+            case WebViewClient.ERROR_CONNECT:
+            case WebViewClient.ERROR_IO:
+            case WebViewClient.ERROR_TIMEOUT:
+            case WebViewClient.ERROR_TOO_MANY_REQUESTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Delay before retry number {@code attempt} (1-based): exponential backoff with equal jitter. */
+    long delayForAttempt(int attempt) {
+        long exp = baseDelayMs << Math.min(attempt - 1, 20);
+        long capped = Math.min(maxDelayMs, exp < 0 ? maxDelayMs : exp);
+        long half = capped / 2;
+        return half + (half > 0 ? (long) (random.nextDouble() * (capped - half + 1)) : 0);
+    }
+
+    /** Whether retry number {@code attempt} should be a cache-only load. */
+    boolean isCacheOnlyAttempt(int attempt) {
+        return cacheFirst && attempt == 1;
+    }
+}
@@ -0,0 +1,138 @@
+package com.cb4rr.cordova.plugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small on-disk store of embedded sessions (one JSON file per instance id) so instances can be
+ * rebuilt after the process is killed in the background.
+ *
+ * Writes go to a temp file that is renamed into place, so a crash mid-write never leaves a
+ * truncated record behind. Not thread-safe; callers serialise access on one background thread.
+ */
+final class SessionStore {
+
+    private static final String SUFFIX = ".json";
+
+    /** Everything needed to rebuild one instance. */
+    static final class Record {
+        String id;
+        String url;
+        JSONObject options;
+        /** byte[] entries of the WebView.saveState() bundle, base64 by key; may be null. */
+        JSONObject state;
+        int scrollX;
+        int scrollY;
+        boolean hidden;
+        long savedAt;
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("url", url);
+            json.put("options", options != null ? options : new JSONObject());
+            if (state != null) json.put("state", state);
+            json.put("scrollX", scrollX);
+            json.put("scrollY", scrollY);
+            json.put("hidden", hidden);
+            json.put("savedAt", savedAt);
+            return json;
+        }
+
+        static Record fromJson(JSONObject json) throws JSONException {
+            Record r = new Record();
+            r.id = json.getString("id");
+            r.url = json.optString("url", null);
+            r.options = json.optJSONObject("options");
+            if (r.options == null) r.options = new JSONObject();
+            r.state = json.optJSONObject("state");
+            r.scrollX = json.optInt("scrollX", 0);
+            r.scrollY = json.optInt("scrollY", 0);
+            r.hidden = json.optBoolean("hidden", false);
+            r.savedAt = json.optLong("savedAt", 0);
+            return r;
+        }
+    }
+
+    private final File dir;
+
+    SessionStore(File dir) {
+        this.dir = dir;
+    }
+
+    void save(Record record) throws IOException, JSONException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File target = fileFor(record.id);
+        File tmp = new File(dir, target.getName() + ".tmp");
+        byte[] bytes = record.toJson().toString().getBytes("UTF-8");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + target);
+        }
+    }
+
+    void delete(String id) {
+        try {
+            fileFor(id).delete();
+        } catch (UnsupportedEncodingException ignored) {}
+    }
+
+    void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+
+    /** Every readable record; unreadable files are removed. */
+    List<Record> loadAll() {
+        List<Record> records = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) return records;
+        for (File f : files) {
+            if (!f.getName().endsWith(SUFFIX)) continue;
+            try {
+                records.add(Record.fromJson(new JSONObject(read(f))));
+            } catch (Exception e) {
+                f.delete();
+            }
+        }
+        return records;
+    }
+
+    private File fileFor(String id) throws UnsupportedEncodingException {
+        return new File(dir, URLEncoder.encode(id, "UTF-8") + SUFFIX);
+    }
+
+    private static String read(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[(int) f.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(buf, 0, off, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.cb4rr.cordova.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams HTTP downloads to disk through NIO channels with one bounded buffer per transfer, so a
+ * file is never held in memory.
+ *
+ * Data lands in {@code <name>.part} and is renamed on completion. Next to it,
+ * {@code <name>.part.meta} records the URL and the ETag / Last-Modified the bytes came from. A part
+ * file is resumed only for the same URL, with a Range request guarded by If-Range, so a changed
+ * entity is downloaded whole instead of spliced onto old bytes; without a usable validator the
+ * download starts over. A transfer interrupted mid-way is retried from where it stopped. Redirects are followed here, one
+ * hop at a time, so cookies and extra headers are chosen for each URL rather than carried along to
+ * whatever host a redirect names. At most {@code maxConcurrent} transfers run at once; the rest
+ * wait in FIFO order.
+ *
+ * Pure java.net / java.nio so it can be exercised against a local HTTP server without a device.
+ */
+final class StreamingDownloader {
+
+    static final int DEFAULT_MAX_CONCURRENT = 2;
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int MAX_RESUME_ATTEMPTS = 3;
+    private static final long RESUME_DELAY_MS = 500;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final String PART_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".meta";
+
+    /** Called on the transfer's worker thread; {@code file} is the target chosen for the download. */
+    interface Listener {
+        void onProgress(String downloadId, File file, long received, long total);
+
+        void onComplete(String downloadId, File file, long bytes);
+
+        /** {@code resumable} is true when a part file was kept and a later start will resume it. */
+        void onError(String downloadId, File file, String message, boolean resumable);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Boolean> cancelled = new ConcurrentHashMap<>();
+    /** Part files of queued and running transfers. */
+    private final Set<String> reserved = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Where a part file's bytes came from. */
+    private static final class PartInfo {
+        String url;
+        String etag;
+        String lastModified;
+
+        /** If-Range value: a strong ETag, else Last-Modified; null if neither can vouch for the bytes. */
+        String validator() {
+            if (etag != null && !etag.startsWith("W/")) return etag;
+            return lastModified;
+        }
+    }
+
+    StreamingDownloader(int maxConcurrent) {
+        int n = Math.max(1, maxConcurrent);
+        executor = new ThreadPoolExecutor(n, n, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    void setMaxConcurrent(int maxConcurrent) {
+        int n = Math.max(1, maxConcurrent);
+        if (n > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(n);
+            executor.setCorePoolSize(n);
+        } else {
+            executor.setCorePoolSize(n);
+            executor.setMaximumPoolSize(n);
+        }
+    }
+
+    int getMaxConcurrent() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Queues a download of {@code url} into {@code dir}, named after {@code fileName} (see
+     * {@link #uniqueTarget}; the name is picked on the worker thread, as it touches the disk).
+     * {@code headers} (UA, Referer, ...) go to every hop and may be null; cookies and URL-scoped
+     * headers come from {@code hop}, per URL.
+     */
+    void start(final String downloadId, final String url, final Map<String, String> headers,
+            final NativeFetcher.Hop hop, final File dir, final String fileName, final Listener listener) {
+        cancelled.remove(downloadId);
+        executor.execute(() -> {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                cancelled.remove(downloadId);
+                listener.onError(downloadId, new File(dir, fileName), "Cannot create " + dir, false);
+                return;
+            }
+            File target = uniqueTarget(dir, fileName, url);
+            try {
+                run(downloadId, url, headers, hop, target, listener);
+            } finally {
+                reserved.remove(partFileFor(target).getPath());
+            }
+        });
+    }
+
+    /**
+     * File to download {@code url} into, named after {@code fileName} in {@code dir}, with its part
+     * file reserved until the caller releases it. Finished files are never overwritten, and a part
+     * file is only reused (resumed) when it was started from the same URL and no queued or running
+     * transfer owns it; otherwise a "-n" suffix is added.
+     */
+    private synchronized File uniqueTarget(File dir, String fileName, String url) {
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String ext = dot > 0 ? fileName.substring(dot) : "";
+        for (int n = 0; ; n++) {
+            File target = new File(dir, n == 0 ? fileName : stem + "-" + n + ext);
+            if (target.exists()) continue;
+            File part = partFileFor(target);
+            if (reserved.contains(part.getPath())) continue;
+            if (part.exists()) {
+                PartInfo info = readPartInfo(part);
+                if (info == null || !url.equals(info.url)) continue;
+            }
+            reserved.add(part.getPath());
+            return target;
+        }
+    }
+
+    /** Stops a queued or running transfer; its part file is kept for a later resume. */
+    void cancel(String downloadId) {
+        cancelled.put(downloadId, Boolean.TRUE);
+    }
+
+    /** Part file used while {@code target} is being downloaded. */
+    static File partFileFor(File target) {
+        return new File(target.getParentFile(), target.getName() + PART_SUFFIX);
+    }
+
+    private void run(String downloadId, String url, Map<String, String> headers, NativeFetcher.Hop hop,
+            File target, Listener listener) {
+        File part = partFileFor(target);
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= MAX_RESUME_ATTEMPTS; attempt++) {
+            if (isCancelled(downloadId)) {
+                cancelled.remove(downloadId);
+                listener.onError(downloadId, target, "cancelled", part.length() > 0);
+                return;
+            }
+            try {
+                long bytes = transfer(downloadId, url, headers, hop, target, listener);
+                if (bytes < 0) {
+                    cancelled.remove(downloadId);
+                    listener.onError(downloadId, target, "cancelled", part.length() > 0);
+                    return;
+                }
+                if (target.exists()) target.delete();
+                if (!part.renameTo(target)) throw new IOException("Cannot move download into " + target);
+                metaFileFor(part).delete();
+                cancelled.remove(downloadId);
+                listener.onComplete(downloadId, target, bytes);
+                return;
+            } catch (HttpStatusException e) {
+                // Not a network hiccup; resuming will not help
+                cancelled.remove(downloadId);
+                listener.onError(downloadId, target, e.getMessage(), false);
+                part.delete();
+                metaFileFor(part).delete();
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                if (attempt < MAX_RESUME_ATTEMPTS) {
+                    try {
+                        Thread.sleep(RESUME_DELAY_MS * (attempt + 1));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        cancelled.remove(downloadId);
+        listener.onError(downloadId, target, lastError != null ? lastError.getMessage() : "download failed",
+                part.length() > 0);
+    }
+
+    /** Returns the final size, or -1 if cancelled. */
+    private long transfer(String downloadId, String url, Map<String, String> headers, NativeFetcher.Hop hop,
+            File target, Listener listener) throws IOException {
+        File part = partFileFor(target);
+        long offset = part.exists() ? part.length() : 0;
+        String validator = null;
+        if (offset > 0) {
+            PartInfo info = readPartInfo(part);
+            if (info != null && url.equals(info.url)) validator = info.validator();
+            // Nothing to prove the server still has the same entity; a Range would splice two of them
+            if (validator == null) offset = 0;
+        }
+
+        HttpURLConnection conn;
+        int status;
+        String hopUrl = url;
+        for (int redirects = 0; ; redirects++) {
+            conn = open(hopUrl, headers, hop, offset, validator);
+            status = conn.getResponseCode();
+            if (hop != null) {
+                List<String> setCookies = NativeFetcher.headerValues(conn, "Set-Cookie");
+                if (!setCookies.isEmpty()) hop.storeCookies(hopUrl, setCookies);
+            }
+            if (status < 300 || status >= 400) break;
+
+            String location = NativeFetcher.resolveLocation(hopUrl, conn.getHeaderField("Location"));
+            conn.disconnect();
+            if (location == null) throw new HttpStatusException(status);
+            if (redirects >= NativeFetcher.MAX_REDIRECTS) throw new HttpStatusException("Too many redirects from " + url);
+            hopUrl = location;
+        }
+
+        try {
+            boolean append;
+            if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                append = true;
+            } else if (status == 416 && offset > 0) {
+                // The part file holds the whole entity only if the server says so ("bytes */N")
+                if (completeLength(conn) == offset) return offset;
+                part.delete();
+                metaFileFor(part).delete();
+                throw new IOException("Range not satisfiable for a " + offset + "-byte part; starting over");
+            } else if (status >= 200 && status < 300) {
+                // Fresh start, a changed entity (If-Range failed) or a server that ignores Range
+                append = false;
+                offset = 0;
+                PartInfo info = new PartInfo();
+                info.url = url;
+                info.etag = conn.getHeaderField("ETag");
+                info.lastModified = conn.getHeaderField("Last-Modified");
+                writePartInfo(part, info);
+            } else {
+                throw new HttpStatusException(status);
+            }
+
+            long total = totalSize(conn, offset, append);
+
+            InputStream raw = conn.getInputStream();
+            ReadableByteChannel in = Channels.newChannel(raw);
+            FileOutputStream fos = new FileOutputStream(part, append);
+            FileChannel out = fos.getChannel();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                long received = offset;
+                long lastReport = 0;
+                listener.onProgress(downloadId, target, received, total);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) received += out.write(buffer);
+                    buffer.clear();
+
+                    if (isCancelled(downloadId)) return -1;
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                        lastReport = now;
+                        listener.onProgress(downloadId, target, received, total);
+                    }
+                }
+                out.force(false);
+                if (total > 0 && received < total) throw new IOException("Connection closed at " + received + " of " + total);
+                listener.onProgress(downloadId, target, received, total > 0 ? total : received);
+                return received;
+            } finally {
+                out.close();
+                fos.close();
+                in.close();
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(String url, Map<String, String> headers, NativeFetcher.Hop hop,
+            long offset, String validator) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(NativeFetcher.CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(NativeFetcher.READ_TIMEOUT_MS);
+        conn.setInstanceFollowRedirects(false);
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                if (h.getValue() != null) conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+        if (hop != null) {
+            String cookies = hop.cookiesFor(url);
+            if (cookies != null && !cookies.isEmpty()) conn.setRequestProperty("Cookie", cookies);
+            Map<String, String> extra = hop.headersFor(url);
+            if (extra != null) {
+                for (Map.Entry<String, String> h : extra.entrySet()) conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+        // Bytes on disk must be entity bytes, or a Range offset would not line up after a resume
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        if (offset > 0) {
+            conn.setRequestProperty("Range", "bytes=" + offset + "-");
+            conn.setRequestProperty("If-Range", validator);
+        }
+        return conn;
+    }
+
+    private static File metaFileFor(File part) {
+        return new File(part.getParentFile(), part.getName() + META_SUFFIX);
+    }
+
+    /** The part file's origin, or null if it has none or it cannot be read. */
+    private static PartInfo readPartInfo(File part) {
+        File meta = metaFileFor(part);
+        if (!meta.isFile()) return null;
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(meta);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        PartInfo info = new PartInfo();
+        info.url = props.getProperty("url");
+        info.etag = props.getProperty("etag");
+        info.lastModified = props.getProperty("lastModified");
+        return info.url != null ? info : null;
+    }
+
+    private static void writePartInfo(File part, PartInfo info) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("url", info.url);
+        if (info.etag != null) props.setProperty("etag", info.etag);
+        if (info.lastModified != null) props.setProperty("lastModified", info.lastModified);
+        OutputStream out = new FileOutputStream(metaFileFor(part));
+        try {
+            props.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    // N from a 416's "Content-Range: bytes */N", or -1.
+    private static long completeLength(HttpURLConnection conn) {
+        String range = conn.getHeaderField("Content-Range");
+        if (range == null || !range.trim().startsWith("bytes */")) return -1;
+        try {
+            return Long.parseLong(range.trim().substring(8).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long totalSize(HttpURLConnection conn, long offset, boolean partial) {
+        if (partial) {
+            String range = conn.getHeaderField("Content-Range"); // bytes a-b/total
+            if (range != null) {
+                int slash = range.lastIndexOf('/');
+                if (slash >= 0) {
+                    try {
+                        return Long.parseLong(range.substring(slash + 1).trim());
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+        }
+        long length = conn.getContentLengthLong();
+        return length >= 0 ? length + (partial ? offset : 0) : -1;
+    }
+
+    private boolean isCancelled(String downloadId) {
+        return cancelled.containsKey(downloadId);
+    }
+
+    private static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HttpStatusException(int status) {
+            super("HTTP " + status);
+        }
+
+        HttpStatusException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.cb4rr.cordova.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free ring buffer of trace events, exported in the Chrome trace-event
+ * format (loadable in Perfetto / chrome://tracing).
+ *
+ * Writers claim a sequence number with a single atomic increment, take the slot with a CAS and
+ * publish it by storing the slot's sequence number last; readers skip slots whose sequence
+ * changed while they were copied.
+ * When tracing is disabled every record call returns after one volatile read.
+ */
+final class TraceBuffer {
+
+    static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = 1 << 16;
+
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_INSTANT = 'i';
+    private static final char PHASE_COUNTER = 'C';
+
+    private volatile boolean enabled = false;
+    private volatile Ring ring = new Ring(DEFAULT_CAPACITY);
+
+    private final long originNanos = System.nanoTime();
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Turns recording on or off. A different capacity replaces (and clears) the buffer. */
+    void setEnabled(boolean on, int capacity) {
+        if (capacity > 0 && normalize(capacity) != ring.capacity) {
+            ring = new Ring(normalize(capacity));
+        }
+        enabled = on;
+    }
+
+    void clear() {
+        ring = new Ring(ring.capacity);
+    }
+
+    /** Start timestamp for a span, or 0 when tracing is off (so callers can skip the end call). */
+    long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /** Records a complete span that started at {@code startNanos} (from {@link #begin()}) and ends now. */
+    void end(String category, String name, long startNanos, String detail) {
+        if (!enabled || startNanos == 0L) return;
+        ring.record(PHASE_COMPLETE, category, name, startNanos, System.nanoTime() - startNanos, detail);
+    }
+
+    /** Records a zero-length marker. */
+    void instant(String category, String name, String detail) {
+        if (!enabled) return;
+        ring.record(PHASE_INSTANT, category, name, System.nanoTime(), 0L, detail);
+    }
+
+    /** Records a counter sample (e.g. a queue depth), drawn as a track in Perfetto. */
+    void counter(String category, String name, long value) {
+        if (!enabled) return;
+        ring.record(PHASE_COUNTER, category, name, System.nanoTime(), value, null);
+    }
+
+    /** Snapshot of the buffer as a Chrome trace-event JSON object. */
+    JSONObject toChromeTrace() throws JSONException {
+        Ring r = ring;
+        JSONArray events = new JSONArray();
+        Map<Long, String> threadNames = new HashMap<>();
+
+        long end = r.cursor.get();
+        long start = Math.max(0L, end - r.capacity);
+        for (long seq = start; seq < end; seq++) {
+            int idx = (int) (seq & r.mask);
+            if (r.published.get(idx) != seq + 1) continue;
+
+            char phase = r.phases[idx];
+            String category = r.categories[idx];
+            String name = r.names[idx];
+            long ts = r.timestamps[idx];
+            long dur = r.durations[idx];
+            long tid = r.threadIds[idx];
+            String threadName = r.threadNames[idx];
+            String detail = r.details[idx];
+
+            // Slot was overwritten while we were copying it
+            if (r.published.get(idx) != seq + 1) continue;
+
+            JSONObject evt = new JSONObject();
+            evt.put("name", name);
+            evt.put("cat", category);
+            evt.put("ph", String.valueOf(phase));
+            evt.put("ts", (ts - originNanos) / 1000.0);
+            if (phase == PHASE_COMPLETE) {
+                evt.put("dur", dur / 1000.0);
+            } else if (phase == PHASE_COUNTER) {
+                // Counters keep their value in the duration slot
+                JSONObject args = new JSONObject();
+                args.put(name, dur);
+                evt.put("args", args);
+            } else {
+                evt.put("s", "t");
+            }
+            evt.put("pid", 1);
+            evt.put("tid", tid);
+            if (detail != null) {
+                JSONObject args = new JSONObject();
+                args.put("detail", detail);
+                evt.put("args", args);
+            }
+            events.put(evt);
+            if (threadName != null) threadNames.put(tid, threadName);
+        }
+
+        for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+            JSONObject meta = new JSONObject();
+            meta.put("name", "thread_name");
+            meta.put("ph", "M");
+            meta.put("pid", 1);
+            meta.put("tid", entry.getKey());
+            JSONObject args = new JSONObject();
+            args.put("name", entry.getValue());
+            meta.put("args", args);
+            events.put(meta);
+        }
+
+        JSONObject trace = new JSONObject();
+        trace.put("traceEvents", events);
+        trace.put("displayTimeUnit", "ms");
+        JSONObject other = new JSONObject();
+        other.put("capacity", r.capacity);
+        other.put("recorded", end);
+        other.put("dropped", start);
+        trace.put("otherData", other);
+        return trace;
+    }
+
+    private static int normalize(int capacity) {
+        int c = Math.min(Math.max(capacity, 16), MAX_CAPACITY);
+        return Integer.highestOneBit(c - 1) << 1;
+    }
+
+    private static final class Ring {
+        final int capacity;
+        final int mask;
+        /** {@link #published} value while a writer owns the slot. */
+        static final long WRITING = -1L;
+
+        final AtomicLong cursor = new AtomicLong();
+        final AtomicLongArray published;
+        final char[] phases;
+        final String[] categories;
+        final String[] names;
+        final long[] timestamps;
+        final long[] durations;
+        final long[] threadIds;
+        final String[] threadNames;
+        final String[] details;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.published = new AtomicLongArray(capacity);
+            this.phases = new char[capacity];
+            this.categories = new String[capacity];
+            this.names = new String[capacity];
+            this.timestamps = new long[capacity];
+            this.durations = new long[capacity];
+            this.threadIds = new long[capacity];
+            this.threadNames = new String[capacity];
+            this.details = new String[capacity];
+        }
+
+        void record(char phase, String category, String name, long ts, long dur, String detail) {
+            long seq = cursor.getAndIncrement();
+            int idx = (int) (seq & mask);
+            // Claim the slot by swapping its published sequence for WRITING. The CAS is a full
+            // fence, so the field writes below cannot become visible before readers see the slot
+            // as unpublished. If another writer holds the slot (a full lap ahead or behind), drop
+            // this event rather than interleave field writes with it.
+            long current;
+            do {
+                current = published.get(idx);
+                if (current == WRITING || current > seq) return;
+            } while (!published.compareAndSet(idx, current, WRITING));
+            Thread thread = Thread.currentThread();
+            phases[idx] = phase;
+            categories[idx] = category;
+            names[idx] = name;
+            timestamps[idx] = ts;
+            durations[idx] = dur;
+            threadIds[idx] = thread.getId();
+            threadNames[idx] = thread.getName();
+            details[idx] = detail;
+            published.set(idx, seq + 1);
+        }
+    }
+}
@@ -2,6 +2,18 @@
 
 let exec = require('cordova/exec');
 
+// Android runs per-instance calls (create, destroy, loadUrl, reload, goBack, goForward,
+// setVisible, executeScript, canGoBack, clearHistory, postMessage) through one serial queue per id;
+// executeScriptAll adds one part to the queue of each id it targets.
+// A queued loadUrl replaces pending navigations and a reload replaces a pending reload, while a
+// reload queued behind a pending loadUrl is dropped itself (behind goBack/goForward it still runs). setVisible replaces a
+// pending setVisible, and create/destroy replace pending calls for that id; replaced calls succeed
+// with 'superseded'.
+
+// executeScript tokens still waiting for an answer, mapped to their instance id (for cancelScript)
+let scriptCounter = 0;
+const pendingScripts = {};
+
 let EmbeddedWebView = {
     /**
      * Create and show an embedded WebView instance
@@ -11,6 +23,22 @@ let EmbeddedWebView = {
      * @param {number} options.top - Top offset in pixels (distance from top of screen)
      * @param {number} options.height - Height in pixels (visible area for the WebView)
      * @param {object} [options.headers] - Optional custom HTTP headers
+     * @param {object|array} [options.requestHeaders] - Default headers for GET requests that load
+     *   documents in this instance (top-level loads, links, redirects, _blank windows, frames).
+     *   Android only. Either a header object applied to all URLs, or rules scoped by URL:
+     *   [
+     *     { pattern: "api.example.com", headers: { Authorization: "Bearer ..." }, subresources: true },
+     *     { headers: { "X-Tenant": "acme" } }
+     *   ]
+     *   pattern is [scheme://]host[/path]: it matches that host and its subdomains (and, if given,
+     *   the scheme and paths starting with /path), never a URL that merely contains the text.
+     *   subresources: true also applies a rule to scripts, styles, images and XHR. Those are then
+     *   fetched natively and bypass the WebView HTTP cache, so scope such rules narrowly.
+     *   While the cache mode is cache-first (adaptive loading on a metered or slow network,
+     *   cache-first retries) only document rules apply and subresources stay on the WebView cache;
+     *   offline, every request is left to the WebView cache.
+     *   Non-GET requests use the default network stack unchanged. Redirects are followed hop by
+     *   hop, and each hop only gets the headers and cookies scoped to its own URL.
      * @param {string} [options.progressColor] - Optional progress bar color
      * @param {number} [options.progressHeight] - Optional progress bar height
      * @param {boolean} [options.enableZoom=false] - Enable zoom controls
@@ -22,6 +50,52 @@ let EmbeddedWebView = {
      *     blockedUrls: ["login.apus.edu", "apply"]
      *   }
      * @param {array} [options.historySkipUrls] - URLs to skip in browser history during back navigation
+     * @param {object|boolean} [options.retry] - Retry transient main-frame failures natively (Android only)
+     *   Only GET loads are retried (a failed form POST is reported, never resent as a GET); a
+     *   loadUrl() with headers is retried with the same headers.
+     *   {
+     *     maxAttempts: 3,    // retries after the first failure
+     *     baseDelayMs: 500,  // exponential backoff with jitter
+     *     maxDelayMs: 8000,
+     *     cacheFirst: false  // first retry renders from the HTTP cache only
+     *   }
+     *   Retried failures: host lookup, connect, I/O, timeout and the WebView's "too many requests
+     *   during this load" error. HTTP error statuses (including 429) are not load errors and are
+     *   not retried.
+     *   While retrying, `retrying` events fire instead of `loadError`; when attempts run out
+     *   `retryExhausted` (with per-attempt timings) fires, followed by `loadError`.
+     * @param {string} [options.mediaSuspend] - 'preserve' to keep players alive when hidden (Android only):
+     *   setVisible(false) pauses <video>/<audio> and YouTube (enablejsapi=1) / Vimeo embeds through
+     *   their APIs and records positions instead of reloading the iframes; setVisible(true) resumes
+     *   the media that was playing. Fires `mediaSuspended` / `mediaResumed`
+     *   (event.detail = { latencyMs, state }). When the app goes to the background with every
+     *   instance preserved and hidden, WebView timers are paused, but only if the KeepRunning
+     *   preference is false (the default, true, keeps the app's JS running as configured).
+     * @param {boolean} [options.persistSession=false] - Save this instance (options, back/forward
+     *   state, URL, scroll position) when the app goes to the background, so it can be brought back
+     *   with restoreSessions() after Android kills the process. Android only. Sessions are kept in
+     *   app storage excluded from backups, and cookies / requestHeaders are never saved: pass them
+     *   again to restoreSessions().
+     * @param {object|boolean} [options.downloads] - Save files the page downloads natively (Android only)
+     *   { directory: 'files' | 'cache' | 'external', maxConcurrent: 2 }, or true for the defaults.
+     *   Files are streamed to <directory>/downloads with the instance's cookies; an interrupted
+     *   download of the same URL resumes with an HTTP Range request guarded by If-Range (ETag or
+     *   Last-Modified), and starts over if the file changed. maxConcurrent is shared by all instances.
+     *   Fires `downloadProgress`, `downloadComplete` and `downloadError`
+     *   (event.detail = { downloadId, url, fileName, path, mimeType, received, total[, error] }).
+     * @param {object|boolean} [options.console] - Forward page console output (Android only)
+     *   { level: 'warning', include: [...], exclude: [...], ratePerSecond: 20, burst: 50 },
+     *   or true for the defaults. level is the minimum of 'debug' | 'log' | 'warning' | 'error';
+     *   include/exclude are case-insensitive substrings. Messages over the rate limit are counted,
+     *   not queued. Delivered in batches as `consoleMessage` (event.detail = { messages: [{ level,
+     *   message, source, line, timestamp }], dropped, totalDropped }).
+     * @param {object} [options.scripts] - executeScript / executeScriptAll limits (Android only)
+     *   {
+     *     maxInFlight: 8,            // scripts running at once (0 = no limit)
+     *     overflow: 'queue',         // or 'reject' to fail calls over the limit
+     *     timeoutMs: 0,              // default per-call timeout (0 = none)
+     *     reportUnresponsive: false  // fire `pageUnresponsive` when a running script times out
+     *   }                            // (event.detail = { token, timeoutMs, inFlight, queued })
      * @param {object} [options.cookies] - Cookies to set BEFORE loading the URL
      *   Example:
      *   {
@@ -117,8 +191,20 @@ let EmbeddedWebView = {
      * Execute JavaScript in a specific embedded WebView instance
      * @param {string} id
      * @param {string} script
+     * @param {object} [options] - Android only
+     * @param {number} [options.timeoutMs] - Fail with an error starting 'timeout' if no answer by
+     *   then, counted from this call (time spent behind earlier calls for the id and behind the
+     *   maxInFlight limit counts). Defaults to options.scripts.timeoutMs from create().
+     * @param {string} [options.token] - Token for cancelScript (generated when omitted)
+     * @returns {string} the token, for cancelScript()
      */
-    executeScript: function (id, script, successCallback, errorCallback) {
+    executeScript: function (id, script, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+
         if (!id || typeof id !== 'string') {
             errorCallback && errorCallback('id must be a non-empty string');
             return;
@@ -129,12 +215,127 @@ let EmbeddedWebView = {
             return;
         }
 
+        options = options || {};
+        const token = options.token ? String(options.token) : 'script-' + (++scriptCounter);
+        const native = { token: token };
+        if (typeof options.timeoutMs === 'number') native.timeoutMs = options.timeoutMs;
+
+        if (pendingScripts[token] !== undefined) {
+            errorCallback && errorCallback('Script token already in use: ' + token);
+            return;
+        }
+
+        pendingScripts[token] = id;
+        exec(
+            function (result) {
+                delete pendingScripts[token];
+                successCallback && successCallback(result);
+            },
+            function (error) {
+                delete pendingScripts[token];
+                errorCallback && errorCallback(error);
+            },
+            'EmbeddedWebView',
+            'executeScript',
+            [id, script, native]
+        );
+        return token;
+    },
+
+    /**
+     * Cancel an executeScript call (Android only). Its errorCallback receives 'cancelled'.
+     * A script already running in the page cannot be interrupted; only its answer is discarded.
+     * @param {string} token - Value returned by executeScript
+     * @param {function} [successCallback] - receives 1 if the call was cancelled, 0 if it had
+     *   already finished
+     */
+    cancelScript: function (token, successCallback, errorCallback) {
+        const id = pendingScripts[token];
+        if (!id) {
+            successCallback && successCallback(0);
+            return;
+        }
+
+        exec(successCallback, errorCallback, 'EmbeddedWebView', 'cancelScript', [id, String(token)]);
+    },
+
+    /**
+     * Execute the same JavaScript in many instances at once and collect every result (Android only).
+     * In each instance the script runs after the calls already queued for that id; an instance
+     * whose part is replaced by a later create/destroy reports { error: 'superseded' }. Each part
+     * counts toward that instance's options.scripts limits, with timeoutMs as its timeout.
+     * @param {string} script
+     * @param {object} [options]
+     * @param {array} [options.ids] - Instance ids to target (default: all instances). An empty
+     *   array targets none and succeeds with {}.
+     * @param {number} [options.timeoutMs=5000] - Instances that have not answered by then report an
+     *   error; 0 means no timeout, as for options.scripts.timeoutMs
+     * @param {function} successCallback - (results) => {} where
+     *   results = { <id>: { result: <same value executeScript returns> } | { error: string } }
+     */
+    executeScriptAll: function (script, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+
+        if (!script || typeof script !== 'string') {
+            errorCallback && errorCallback('script must be a non-empty string');
+            return;
+        }
+
+        options = options || {};
+
         exec(
             successCallback,
             errorCallback,
             'EmbeddedWebView',
-            'executeScript',
-            [id, script]
+            'executeScriptAll',
+            [script, {
+                ids: Array.isArray(options.ids) ? options.ids : null,
+                timeoutMs: typeof options.timeoutMs === 'number' ? options.timeoutMs : 5000
+            }]
+        );
+    },
+
+    /**
+     * Send a message to the page loaded in a specific instance (Android only).
+     * The page receives it through the injected in-page API:
+     *   EWV.addEventListener('message', function (e) { e.data ... });
+     * and replies with EWV.postMessage(data), which arrives here as a `message` event:
+     *   event.detail = { messages: [ { data: any } | { binary: true, data: '<base64>' } ] }
+     * Bursts are delivered in one event; decode binary entries with
+     *   require('cordova/base64').toArrayBuffer(message.data)
+     * Uses a WebMessagePort where supported, otherwise a JavaScript interface.
+     * @param {string} id
+     * @param {*|ArrayBuffer} data - JSON-serialisable value, or an ArrayBuffer / typed array
+     */
+    postMessage: function (id, data, successCallback, errorCallback) {
+        if (!id || typeof id !== 'string') {
+            errorCallback && errorCallback('id must be a non-empty string');
+            return;
+        }
+
+        let payload;
+        let binary = false;
+
+        if (data instanceof ArrayBuffer || ArrayBuffer.isView(data)) {
+            const buffer = ArrayBuffer.isView(data)
+                ? data.buffer.slice(data.byteOffset, data.byteOffset + data.byteLength)
+                : data;
+            payload = require('cordova/base64').fromArrayBuffer(buffer);
+            binary = true;
+        } else {
+            payload = JSON.stringify(data === undefined ? null : data);
+        }
+
+        exec(
+            successCallback,
+            errorCallback,
+            'EmbeddedWebView',
+            'postMessage',
+            [id, payload, binary]
         );
     },
 
@@ -244,7 +445,7 @@ let EmbeddedWebView = {
         const script =
             `${storageType}.setItem(${JSON.stringify(safeKey)}, ${JSON.stringify(safeToken)});`;
 
-        this.executeScript(id, script, successCallback, errorCallback);
+        this.executeScript(id, script, null, successCallback, errorCallback);
     },
 
     /**
@@ -262,7 +463,117 @@ let EmbeddedWebView = {
         const script =
             `${storageType}.getItem(${JSON.stringify(safeKey)});`;
 
-        this.executeScript(id, script, successCallback, errorCallback);
+        this.executeScript(id, script, null, successCallback, errorCallback);
+    },
+
+    /**
+     * Cancel a download started with options.downloads (Android only).
+     * The partial file is kept, so the same download started again resumes where it stopped.
+     * @param {string} downloadId - event.detail.downloadId from a download event
+     */
+    cancelDownload: function (downloadId, successCallback, errorCallback) {
+        if (!downloadId || typeof downloadId !== 'string') {
+            errorCallback && errorCallback('downloadId must be a non-empty string');
+            return;
+        }
+        exec(successCallback, errorCallback, 'EmbeddedWebView', 'cancelDownload', [downloadId]);
+    },
+
+    /**
+     * Make sessions saved with options.persistSession available again (Android only).
+     * Nothing is rebuilt up front: each instance is recreated, with its back/forward list and
+     * scroll position, the first time its id is used (setVisible, loadUrl, executeScript, ...),
+     * firing `sessionRestored`. Calling create() with the same id starts fresh instead, and
+     * destroy() discards the saved session.
+     * @param {object} [credentials] - Options that are not persisted, per instance id:
+     *   { [id]: { cookies, requestHeaders } }. Merged into the saved options before rebuilding.
+     * @param {function} successCallback - ([{ id, url, hidden, savedAt }]) => {}
+     */
+    restoreSessions: function (credentials, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'EmbeddedWebView', 'restoreSessions', [credentials || null]);
+    },
+
+    /**
+     * Adapt every instance to the current network (Android 7.0+ only).
+     * Watches the default network and switches all instances live:
+     *   unmetered - instance defaults
+     *   metered   - cache-first (LOAD_CACHE_ELSE_NETWORK), prefetch/prerender paused
+     *   slow      - cache-first, network images deferred, prefetch/prerender paused
+     *   offline   - cache only
+     * Each change fires `networkProfileChanged` on every instance
+     * (event.detail = { profile, downstreamKbps, cacheMode, blockNetworkImage, prefetchPaused }).
+     * @param {boolean} enabled
+     * @param {object} [options]
+     * @param {number} [options.slowKbps=1500] - Downstream bandwidth below which a link counts as slow
+     * @param {function} [successCallback] - receives the current profile ('off' when disabled)
+     */
+    setAdaptiveLoading: function (enabled, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+
+        exec(
+            successCallback,
+            errorCallback,
+            'EmbeddedWebView',
+            'setAdaptiveLoading',
+            [!!enabled, options || {}]
+        );
+    },
+
+    /**
+     * Turn the native trace ring buffer on or off (Android only).
+     * While tracing is off nothing is recorded and native debug logging is suppressed.
+     * @param {boolean} enabled
+     * @param {object} [options]
+     * @param {number} [options.capacity=4096] - Ring size in events (rounded up to a power of two)
+     */
+    setTracing: function (enabled, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+
+        options = options || {};
+
+        exec(
+            successCallback,
+            errorCallback,
+            'EmbeddedWebView',
+            'setTracing',
+            [!!enabled, typeof options.capacity === 'number' ? options.capacity : 0]
+        );
+    },
+
+    /**
+     * Export the native trace buffer as Chrome trace-event JSON (Android only).
+     * Save the result to a .json file and open it in Perfetto (ui.perfetto.dev) or chrome://tracing.
+     * @param {object} [options]
+     * @param {boolean} [options.clear=false] - Clear the buffer after exporting
+     * @param {function} successCallback - (trace) => {} where trace = { traceEvents: [...], ... }
+     */
+    dumpTrace: function (options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = null;
+        }
+
+        options = options || {};
+
+        exec(successCallback, errorCallback, 'EmbeddedWebView', 'dumpTrace', [!!options.clear]);
+    },
+
+    /**
+     * Read native runtime metrics (Android only).
+     * @param {function} successCallback - (metrics) => {} where metrics.commandQueue =
+     *   { depth, maxDepth, executed, superseded, instances: { <id>: pendingCount } }
+     */
+    getMetrics: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'EmbeddedWebView', 'getMetrics', []);
     },
 
     /**
@@ -274,7 +585,10 @@ let EmbeddedWebView = {
      * @param {string} id - WebView instance id
      * @param {string} eventName - loadStart, loadStop, loadError,
      *                             navigationStateChanged, canGoBackChanged, canGoForwardChanged,
-     *                             urlChanged
+     *                             urlChanged, message, resourceError, retrying, retryExhausted,
+     *                             networkProfileChanged, mediaSuspended, mediaResumed,
+     *                             sessionRestored, downloadProgress, downloadComplete,
+     *                             downloadError, consoleMessage, pageUnresponsive
      *   Note: loadStart/loadStop only fire on full page loads. For single-page apps (SPA)
      *   that change routes client-side (pushState/replaceState/hash), listen to `urlChanged`
      *   (event.detail = full URL string) or `navigationStateChanged` (event.detail.url).